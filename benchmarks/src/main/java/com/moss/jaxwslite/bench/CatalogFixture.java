@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+
+import com.moss.jaxwslite.bench.catalog.Catalog;
+import com.moss.jaxwslite.bench.catalog.Item;
+import com.moss.jaxwslite.bench.catalog.SpecialItem;
+import com.moss.jaxwslite.bench.catalog.jaxws.LookupResponse;
+import com.moss.jaxwslite.bench.catalog.jaxws.RemoveResponse;
+import com.moss.jaxwslite.bench.catalog.jaxws.SearchResponse;
+import com.moss.jaxwslite.bench.catalog.jaxws.StoreResponse;
+
+/**
+ * Payloads shared by the benchmarks. Responses are encoded the way a JAX-WS
+ * server would send them, including <code>xsi:type</code> values qualified
+ * with the service namespace.
+ */
+public final class CatalogFixture {
+	
+	private static final String ENVELOPE_START = 
+		"<?xml version=\"1.0\" ?><S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Body>";
+	private static final String ENVELOPE_END = "</S:Body></S:Envelope>";
+	
+	private CatalogFixture() {}
+	
+	/**
+	 * Returns <code>count</code> items, every fourth of which is a
+	 * {@link SpecialItem}.
+	 */
+	public static List<Item> items(int count) {
+		
+		List<Item> items = new ArrayList<Item>(count);
+		
+		for (int i = 0; i < count; i++) {
+			
+			String id = "item-" + i;
+			String description = "Description of catalog item number " + i + ", long enough to look like real text";
+			
+			if (i % 4 == 3) {
+				items.add(new SpecialItem(id, "Special " + i, description, i % 50, 9.99 + i, "Two for one"));
+			}
+			else {
+				items.add(new Item(id, "Item " + i, description, i % 50, 4.99 + i));
+			}
+		}
+		
+		return items;
+	}
+	
+	public static byte[] lookupResponse() throws Exception {
+		LookupResponse response = new LookupResponse();
+		response.setReturn(items(4).get(3));
+		return envelope("lookupResponse", response);
+	}
+	
+	public static byte[] searchResponse(int count) throws Exception {
+		SearchResponse response = new SearchResponse();
+		response.setReturn(items(count));
+		return envelope("searchResponse", response);
+	}
+	
+	public static byte[] storeResponse(int count) throws Exception {
+		StoreResponse response = new StoreResponse();
+		response.setReturn(count);
+		return envelope("storeResponse", response);
+	}
+	
+	public static byte[] removeResponse() throws Exception {
+		return envelope("removeResponse", new RemoveResponse());
+	}
+	
+	public static byte[] removeFault() {
+		String fault = 
+			"<S:Fault xmlns:ns4=\"http://www.w3.org/2003/05/soap-envelope\">" +
+			"<faultcode>S:Server</faultcode>" +
+			"<faultstring>No such item</faultstring>" +
+			"<detail><ns2:CatalogFault xmlns:ns2=\"" + Catalog.NAMESPACE + "\"><message>No such item</message></ns2:CatalogFault></detail>" +
+			"</S:Fault>";
+		return (ENVELOPE_START + fault + ENVELOPE_END).getBytes(StandardCharsets.UTF_8);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static byte[] envelope(String elementName, Object wrapper) throws Exception {
+		
+		JAXBContext context = JAXBContext.newInstance(wrapper.getClass(), SpecialItem.class);
+		Marshaller m = context.createMarshaller();
+		m.setProperty(Marshaller.JAXB_FRAGMENT, true);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QName qname = new QName(Catalog.NAMESPACE, elementName);
+		m.marshal(new JAXBElement(qname, wrapper.getClass(), wrapper), out);
+		
+		String payload = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		payload = payload.replace("xsi:type=\"", "xsi:type=\"ns2:");
+		
+		return (ENVELOPE_START + payload + ENVELOPE_END).getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP endpoint that answers every request on a path with the
+ * same canned response, so round-trip benchmarks measure the client rather
+ * than a real server.
+ */
+public class CatalogStub {
+	
+	static {
+		/*
+		 * Without this the JDK server leaves Nagle's algorithm on, and small
+		 * responses sit behind the client's delayed ACK for ~40ms.
+		 */
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+	
+	private final HttpServer server;
+	private final ExecutorService executor;
+	
+	public CatalogStub() throws IOException {
+		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+		server.setExecutor(executor);
+		server.start();
+	}
+	
+	public URL register(String path, final int status, final byte[] response) throws IOException {
+		
+		server.createContext(path, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				
+				InputStream in = exchange.getRequestBody();
+				byte[] buffer = new byte[8192];
+				while (in.read(buffer) != -1) {
+					// discard the request
+				}
+				
+				exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+				exchange.sendResponseHeaders(status, response.length);
+				
+				OutputStream out = exchange.getResponseBody();
+				out.write(response);
+				out.close();
+			}
+		});
+		
+		return new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+	}
+	
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
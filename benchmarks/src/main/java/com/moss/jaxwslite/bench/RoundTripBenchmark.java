@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moss.jaxwslite.JdkHttpTransport;
+import com.moss.jaxwslite.ServiceFactory;
+import com.moss.jaxwslite.bench.catalog.Catalog;
+import com.moss.jaxwslite.bench.catalog.CatalogFault;
+import com.moss.jaxwslite.bench.catalog.Item;
+
+/**
+ * Full calls through a {@link ServiceFactory} proxy against an in-process
+ * HTTP stub: marshal, send, receive and unmarshal, over either transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+	
+	@Param({"1", "100", "10000"})
+	public int items;
+	
+	@Param({"commons", "jdk"})
+	public String transport;
+	
+	private CatalogStub stub;
+	private Catalog lookup;
+	private Catalog search;
+	private Catalog store;
+	private Catalog remove;
+	private List<Item> storeItems;
+	
+	@Setup
+	public void setup() throws Exception {
+		
+		stub = new CatalogStub();
+		ServiceFactory factory = new ServiceFactory();
+		
+		if (transport.equals("jdk")) {
+			factory.setTransport(new JdkHttpTransport(30000));
+		}
+		
+		lookup = factory.create(stub.register("/lookup", 200, CatalogFixture.lookupResponse()), Catalog.NAMESPACE, Catalog.class);
+		search = factory.create(stub.register("/search", 200, CatalogFixture.searchResponse(items)), Catalog.NAMESPACE, Catalog.class);
+		store = factory.create(stub.register("/store", 200, CatalogFixture.storeResponse(items)), Catalog.NAMESPACE, Catalog.class);
+		remove = factory.create(stub.register("/remove", 500, CatalogFixture.removeFault()), Catalog.NAMESPACE, Catalog.class);
+		
+		storeItems = CatalogFixture.items(items);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		stub.stop();
+	}
+	
+	@Benchmark
+	public Item lookup() {
+		return lookup.lookup("item-3");
+	}
+	
+	@Benchmark
+	public List<Item> search() {
+		return search.search("item", items);
+	}
+	
+	@Benchmark
+	public int store() {
+		return store.store(storeItems);
+	}
+	
+	@Benchmark
+	public Object fault() {
+		try {
+			remove.remove("missing");
+			throw new IllegalStateException("Expected a fault");
+		}
+		catch (CatalogFault fault) {
+			return fault;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite.bench;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moss.jaxwslite.ServiceType;
+import com.moss.jaxwslite.bench.catalog.Catalog;
+import com.moss.jaxwslite.bench.catalog.CatalogFault;
+
+/**
+ * Cost of {@link ServiceType#response}: parsing the envelope and unmarshalling
+ * the result or fault, from bytes already in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnmarshalBenchmark {
+	
+	@Param({"1", "100", "10000"})
+	public int items;
+	
+	private ServiceType type;
+	private Method lookup;
+	private Method search;
+	private Method remove;
+	private byte[] lookupResponse;
+	private byte[] searchResponse;
+	private byte[] removeFault;
+	
+	@Setup
+	public void setup() throws Exception {
+		type = new ServiceType(Catalog.class, Catalog.NAMESPACE);
+		lookup = Catalog.class.getMethod("lookup", String.class);
+		search = Catalog.class.getMethod("search", String.class, int.class);
+		remove = Catalog.class.getMethod("remove", String.class);
+		lookupResponse = CatalogFixture.lookupResponse();
+		searchResponse = CatalogFixture.searchResponse(items);
+		removeFault = CatalogFixture.removeFault();
+		
+		List<?> parsed = (List<?>)type.response(search, new ByteArrayInputStream(searchResponse), false);
+		if (parsed.size() != items) {
+			throw new IllegalStateException("Fixture parsed to " + parsed.size() + " items, expected " + items);
+		}
+		if (!(type.response(remove, new ByteArrayInputStream(removeFault), true) instanceof CatalogFault)) {
+			throw new IllegalStateException("Fault fixture did not map to " + CatalogFault.class.getName());
+		}
+	}
+	
+	@Benchmark
+	public Object lookup() throws Exception {
+		return type.response(lookup, new ByteArrayInputStream(lookupResponse), false);
+	}
+	
+	@Benchmark
+	public Object search() throws Exception {
+		return type.response(search, new ByteArrayInputStream(searchResponse), false);
+	}
+	
+	@Benchmark
+	public Object fault() throws Exception {
+		return type.response(remove, new ByteArrayInputStream(removeFault), true);
+	}
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.moss.jaxwslite.ConcurrencyLimiter;
+import com.moss.jaxwslite.Deadline;
+import com.moss.jaxwslite.DeadlineExceededException;
+import com.moss.jaxwslite.EndpointOverloadedException;
+import com.moss.jaxwslite.HedgingPolicy;
+import com.moss.jaxwslite.Mtom;
+import com.moss.jaxwslite.ServiceEndpoint;
+import com.moss.jaxwslite.ServiceFactory;
+import com.moss.jaxwslite.bench.catalog.Catalog;
+import com.moss.jaxwslite.bench.catalog.CatalogAsync;
+import com.moss.jaxwslite.bench.catalog.CatalogFault;
+import com.moss.jaxwslite.bench.catalog.Item;
+import com.moss.jaxwslite.bench.catalog.SpecialItem;
+import com.moss.jaxwslite.bench.catalog.StreamingCatalog;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Calls through {@link ServiceFactory} proxies to a {@link ServiceEndpoint}
+ * serving the catalog, one test per client feature.
+ */
+public class CatalogRoundTripTest {
+	
+	private InMemoryCatalog catalog;
+	private ServiceEndpoint endpoint;
+	private URL url;
+	private ServiceFactory factory;
+	private ExecutorService executor;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		catalog = new InMemoryCatalog();
+		catalog.store(CatalogFixture.items(100));
+		
+		endpoint = new ServiceFactory().createEndpoint(Catalog.NAMESPACE, Catalog.class, catalog);
+		HttpServer server = endpoint.serve(new InetSocketAddress("127.0.0.1", 0), "/catalog");
+		url = new URL("http", "127.0.0.1", server.getAddress().getPort(), "/catalog");
+		
+		factory = new ServiceFactory();
+		executor = Executors.newCachedThreadPool();
+	}
+	
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		endpoint.stop(0);
+	}
+	
+	@Test
+	public void plainCalls() throws Exception {
+		
+		Catalog client = factory.create(url, Catalog.NAMESPACE, Catalog.class);
+		
+		assertEquals("Item 0", client.lookup("item-0").getName());
+		assertTrue(client.lookup("item-3") instanceof SpecialItem);
+		assertNull(client.lookup("missing"));
+		assertEquals(10, client.search("Item", 10).size());
+		assertEquals(2, client.store(CatalogFixture.items(2)));
+		
+		try {
+			client.remove("missing");
+			fail("Expected a fault");
+		}
+		catch (CatalogFault fault) {
+			assertEquals("No such item: missing", fault.getMessage());
+		}
+	}
+	
+	@Test
+	public void asyncCalls() throws Exception {
+		
+		CatalogAsync client = factory.createAsync(url, Catalog.NAMESPACE, Catalog.class, CatalogAsync.class);
+		
+		List<CompletableFuture<Item>> lookups = new ArrayList<CompletableFuture<Item>>();
+		
+		for (int i = 0; i < 20; i++) {
+			lookups.add(client.lookup("item-" + i));
+		}
+		
+		for (int i = 0; i < 20; i++) {
+			assertEquals("item-" + i, lookups.get(i).get(10, TimeUnit.SECONDS).getId());
+		}
+		
+		assertEquals(5, client.search("Special", 5).get(10, TimeUnit.SECONDS).size());
+		
+		try {
+			client.remove("missing").get(10, TimeUnit.SECONDS);
+			fail("Expected a fault");
+		}
+		catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof CatalogFault);
+		}
+	}
+	
+	@Test
+	public void streamedResults() throws Exception {
+		
+		StreamingCatalog client = factory.create(url, Catalog.NAMESPACE, StreamingCatalog.class);
+		
+		Iterator<Item> results = client.search("Item", 1000);
+		int count = 0;
+		
+		while (results.hasNext()) {
+			assertTrue(results.next().getName().startsWith("Item"));
+			count++;
+		}
+		
+		assertEquals(75, count);
+		
+		Iterator<Item> early = client.search("Item", 1000);
+		assertTrue(early.hasNext());
+		early.next();
+		((Closeable)early).close();
+		
+		assertFalse(client.search("nothing", 10).hasNext());
+	}
+	
+	@Test
+	public void mtomRequests() throws Exception {
+		
+		final Queue<String> contentTypes = new ConcurrentLinkedQueue<String>();
+		HttpServer server = endpoint.serve(new InetSocketAddress("127.0.0.1", 0), "/unused");
+		
+		server.createContext("/mtom", exchange -> {
+			contentTypes.add(exchange.getRequestHeaders().getFirst("Content-Type"));
+			endpoint.handle(exchange);
+		});
+		
+		URL mtomUrl = new URL("http", "127.0.0.1", server.getAddress().getPort(), "/mtom");
+		factory.setMtom(mtomUrl, Mtom.ENABLED);
+		Catalog client = factory.create(mtomUrl, Catalog.NAMESPACE, Catalog.class);
+		
+		assertEquals(50, client.store(CatalogFixture.items(50)));
+		assertEquals("item-7", client.lookup("item-7").getId());
+		
+		assertEquals(2, contentTypes.size());
+		
+		for (String contentType : contentTypes) {
+			assertTrue(contentType, contentType.startsWith("multipart/related"));
+		}
+	}
+	
+	@Test
+	public void coalescedCalls() throws Exception {
+		
+		factory.coalesceCalls(Catalog.class, "lookup", true);
+		final Catalog client = factory.create(url, Catalog.NAMESPACE, Catalog.class);
+		
+		CountDownLatch gate = catalog.hold();
+		List<CompletableFuture<Item>> lookups = new ArrayList<CompletableFuture<Item>>();
+		
+		for (int i = 0; i < 8; i++) {
+			lookups.add(CompletableFuture.supplyAsync(() -> client.lookup("item-5"), executor));
+		}
+		
+		waitFor(() -> factory.coalescer().coalesced() == 7);
+		gate.countDown();
+		
+		for (CompletableFuture<Item> lookup : lookups) {
+			assertEquals("item-5", lookup.get(10, TimeUnit.SECONDS).getId());
+		}
+		
+		assertEquals(1, catalog.lookups());
+		assertEquals(1, factory.coalescer().sent());
+	}
+	
+	@Test
+	public void cachedResponses() throws Exception {
+		
+		factory.cacheResponses(Catalog.class, "lookup", 1, TimeUnit.MINUTES);
+		Catalog client = factory.create(url, Catalog.NAMESPACE, Catalog.class);
+		
+		for (int i = 0; i < 3; i++) {
+			assertEquals("item-9", client.lookup("item-9").getId());
+		}
+		
+		assertEquals("item-10", client.lookup("item-10").getId());
+		
+		assertEquals(2, catalog.lookups());
+		assertEquals(2, factory.responseCache().hits());
+		assertEquals(2, factory.responseCache().misses());
+	}
+	
+	@Test
+	public void hedgedCalls() throws Exception {
+		
+		factory.setHedgingPolicy(new HedgingPolicy(95, 5, 50, TimeUnit.MILLISECONDS));
+		factory.hedgeCalls(Catalog.class, "lookup", true);
+		Catalog client = factory.create(url, Catalog.NAMESPACE, Catalog.class);
+		
+		catalog.stallNext(5000);
+		long start = System.nanoTime();
+		
+		assertEquals("item-1", client.lookup("item-1").getId());
+		
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		assertEquals(2, catalog.lookups());
+		assertEquals(1, factory.hedgingPolicy().hedges());
+		
+		/*
+		 * The win is counted just after the result is handed over.
+		 */
+		waitFor(() -> factory.hedgingPolicy().hedgeWins() == 1);
+	}
+	
+	@Test
+	public void deadlines() throws Exception {
+		
+		Catalog client = factory.create(url, Catalog.NAMESPACE, Catalog.class);
+		
+		catalog.stallNext(5000);
+		long start = System.nanoTime();
+		
+		try (Deadline.Scope scope = Deadline.after(200, TimeUnit.MILLISECONDS).enter()) {
+			client.lookup("item-1");
+			fail("Expected the deadline to pass");
+		}
+		catch (DeadlineExceededException ex) {
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		}
+		
+		assertNull(Deadline.current());
+		assertEquals("item-2", client.lookup("item-2").getId());
+	}
+	
+	@Test
+	public void concurrencyLimit() throws Exception {
+		
+		ConcurrencyLimiter limiter = ConcurrencyLimiter.fixed(1, 50, TimeUnit.MILLISECONDS);
+		factory.limitConcurrency(url, limiter);
+		final Catalog client = factory.create(url, Catalog.NAMESPACE, Catalog.class);
+		
+		CountDownLatch gate = catalog.hold();
+		CompletableFuture<Item> first = CompletableFuture.supplyAsync(() -> client.lookup("item-4"), executor);
+		waitFor(() -> catalog.lookups() == 1);
+		
+		try {
+			client.lookup("item-4");
+			fail("Expected the call to be rejected");
+		}
+		catch (EndpointOverloadedException ex) {
+			assertEquals(1, ex.limit());
+		}
+		
+		gate.countDown();
+		
+		assertEquals("item-4", first.get(10, TimeUnit.SECONDS).getId());
+		assertEquals(1, limiter.getRejected());
+		assertEquals(0, limiter.getInFlight());
+	}
+	
+	private static void waitFor(Condition condition) throws InterruptedException {
+		
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		
+		while (!condition.holds()) {
+			
+			if (System.nanoTime() > deadline) {
+				fail("Timed out waiting for the calls");
+			}
+			
+			Thread.sleep(10);
+		}
+	}
+	
+	private interface Condition {
+		boolean holds();
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.moss.jaxwslite.bench.catalog.Catalog;
+import com.moss.jaxwslite.bench.catalog.CatalogFault;
+import com.moss.jaxwslite.bench.catalog.Item;
+
+/**
+ * Catalog implementation served by the round-trip tests. Lookups are
+ * counted, and can be held back to line up concurrent calls or to make one
+ * call slow.
+ */
+class InMemoryCatalog implements Catalog {
+	
+	private final Map<String, Item> items = new ConcurrentSkipListMap<String, Item>();
+	private final AtomicInteger lookups = new AtomicInteger();
+	private volatile CountDownLatch gate;
+	private volatile long stallMillis;
+	
+	/**
+	 * Holds every lookup until the returned latch is opened.
+	 */
+	CountDownLatch hold() {
+		gate = new CountDownLatch(1);
+		return gate;
+	}
+	
+	/**
+	 * Makes the next lookup take <code>millis</code> longer.
+	 */
+	void stallNext(long millis) {
+		stallMillis = millis;
+	}
+	
+	int lookups() {
+		return lookups.get();
+	}
+	
+	public Item lookup(String id) {
+		
+		lookups.incrementAndGet();
+		
+		try {
+			CountDownLatch gate = this.gate;
+			
+			if (gate != null && !gate.await(10, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("Lookup was never let through");
+			}
+			
+			synchronized (this) {
+				long stall = stallMillis;
+				stallMillis = 0;
+				
+				if (stall > 0) {
+					wait(stall);
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(ex);
+		}
+		
+		return items.get(id);
+	}
+	
+	public List<Item> search(String query, int limit) {
+		
+		List<Item> found = new ArrayList<Item>();
+		
+		for (Item item : items.values()) {
+			
+			if (found.size() == limit) {
+				break;
+			}
+			
+			if (item.getName().contains(query)) {
+				found.add(item);
+			}
+		}
+		
+		return found;
+	}
+	
+	public int store(List<Item> items) {
+		
+		for (Item item : items) {
+			this.items.put(item.getId(), item);
+		}
+		
+		return items.size();
+	}
+	
+	public void remove(String id) throws CatalogFault {
+		if (items.remove(id) == null) {
+			throw new CatalogFault("No such item: " + id);
+		}
+	}
+}
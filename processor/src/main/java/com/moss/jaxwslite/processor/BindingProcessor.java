@@ -0,0 +1,560 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a <code>com.moss.jaxwslite.ServiceBinding</code> for each
+ * <code>@WebService</code> interface, holding what jaxws-lite would
+ * otherwise find by reflection when the interface is first used: the
+ * wrapper classes, their accessors in argument order, the declared
+ * exceptions and the classes JAXB must bind.
+ * <p>
+ * The rules are the same as the reflective ones in <code>ServiceType</code>:
+ * wrappers are <code>&lt;package&gt;.jaxws.&lt;Method&gt;</code> and
+ * <code>&lt;Method&gt;Response</code>, setters are ordered by
+ * <code>@XmlType(propOrder)</code> or else by field declaration. An
+ * interface that can't be bound this way gets a warning and no binding,
+ * and is bound by reflection at runtime.
+ */
+@SupportedAnnotationTypes({ "javax.jws.WebService", "jakarta.jws.WebService" })
+public class BindingProcessor extends AbstractProcessor {
+	
+	private static final String SUFFIX = "_Binding";
+	private static final String XML_TYPE = "javax.xml.bind.annotation.XmlType";
+	private static final String XML_JAVA_TYPE_ADAPTER = "javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter";
+	private static final String GENERATED = "javax.annotation.processing.Generated";
+	
+	/*
+	 * Interfaces whose wrappers weren't there yet; they may be generated
+	 * in a later round.
+	 */
+	private final Map<String, String> pending = new LinkedHashMap<String, String>();
+	
+	private Elements elements;
+	private Types types;
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+	
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+		
+		elements = processingEnv.getElementUtils();
+		types = processingEnv.getTypeUtils();
+		
+		for (TypeElement annotation : annotations) {
+			for (Element element : round.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() == ElementKind.INTERFACE) {
+					pending.put(((TypeElement)element).getQualifiedName().toString(), null);
+				}
+			}
+		}
+		
+		for (String name : new ArrayList<String>(pending.keySet())) {
+			
+			TypeElement iface = elements.getTypeElement(name);
+			
+			try {
+				write(iface, generate(iface));
+				pending.remove(name);
+			}
+			catch (MissingWrapperException ex) {
+				pending.put(name, ex.getMessage());
+			}
+			catch (UnbindableException ex) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "No binding generated, " + name + " will be bound by reflection: " + ex.getMessage(), iface);
+				pending.remove(name);
+			}
+			catch (IOException ex) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write binding for " + name + ": " + ex, iface);
+				pending.remove(name);
+			}
+		}
+		
+		if (round.processingOver()) {
+			for (Map.Entry<String, String> entry : pending.entrySet()) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "No binding generated, " + entry.getKey() + " will be bound by reflection: " + entry.getValue(), elements.getTypeElement(entry.getKey()));
+			}
+			pending.clear();
+		}
+		
+		return false;
+	}
+	
+	private void write(TypeElement iface, String source) throws IOException {
+		
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(bindingName(iface), iface);
+		
+		Writer out = file.openWriter();
+		try {
+			out.write(source);
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	private String bindingName(TypeElement iface) {
+		return elements.getBinaryName(iface) + SUFFIX;
+	}
+	
+	private String generate(TypeElement iface) throws UnbindableException {
+		
+		String pkg = elements.getPackageOf(iface).getQualifiedName().toString();
+		
+		if (pkg.length() == 0) {
+			throw new UnbindableException("interfaces in the default package have no wrapper package");
+		}
+		
+		String bindingName = bindingName(iface);
+		
+		StringBuilder out = new StringBuilder();
+		out.append("package ").append(pkg).append(";\n\n");
+		
+		if (elements.getTypeElement(GENERATED) != null) {
+			out.append("@").append(GENERATED).append("(\"").append(getClass().getName()).append("\")\n");
+		}
+		
+		out.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+		out.append("public final class ").append(bindingName.substring(pkg.length() + 1)).append(" extends com.moss.jaxwslite.ServiceBinding {\n\n");
+		
+		out.append("\tpublic Class<?> iface() {\n");
+		out.append("\t\treturn ").append(iface.getQualifiedName()).append(".class;\n");
+		out.append("\t}\n\n");
+		
+		out.append("\tpublic Operation[] operations() {\n");
+		out.append("\t\treturn new Operation[] {\n");
+		
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(iface))) {
+			
+			if (!method.getModifiers().contains(Modifier.ABSTRACT)) {
+				continue;
+			}
+			
+			if (((TypeElement)method.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object")) {
+				continue;
+			}
+			
+			operation(out, pkg, method);
+		}
+		
+		out.append("\t\t};\n");
+		out.append("\t}\n");
+		out.append("}\n");
+		
+		return out.toString();
+	}
+	
+	private void operation(StringBuilder out, String pkg, ExecutableElement method) throws UnbindableException {
+		
+		String name = method.getSimpleName().toString();
+		String wrapperName = pkg + ".jaxws." + name.substring(0, 1).toUpperCase() + name.substring(1);
+		
+		TypeElement request = wrapper(wrapperName, method);
+		TypeElement response = wrapper(wrapperName + "Response", method);
+		
+		List<? extends VariableElement> parameters = method.getParameters();
+		List<ExecutableElement> setters = setters(request);
+		
+		if (setters.size() < parameters.size()) {
+			throw new UnbindableException("wrapper " + request.getQualifiedName() + " has " + setters.size() + " properties but " + name + " takes " + parameters.size() + " arguments");
+		}
+		
+		ExecutableElement getter = getter(response, "Return");
+		ExecutableElement returnSetter = null;
+		for (ExecutableElement candidate : ElementFilter.methodsIn(elements.getAllMembers(response))) {
+			if (getter != null && candidate.getSimpleName().contentEquals("setReturn") && candidate.getParameters().size() == 1 && candidate.getModifiers().contains(Modifier.PUBLIC)) {
+				returnSetter = candidate;
+			}
+		}
+		
+		Set<TypeElement> bound = new LinkedHashSet<TypeElement>();
+		for (VariableElement parameter : parameters) {
+			bound.addAll(fieldTypes(parameter.asType(), pkg));
+		}
+		bound.addAll(fieldTypes(method.getReturnType(), pkg));
+		
+		out.append("\t\t\tnew Operation(\"").append(name).append("\", new Class<?>[] {");
+		for (int i = 0; i < parameters.size(); i++) {
+			out.append(i == 0 ? " " : ", ").append(erasure(parameters.get(i).asType())).append(".class");
+		}
+		out.append(parameters.isEmpty() ? "}, " : " }, ");
+		out.append(request.getQualifiedName()).append(".class, ");
+		out.append(response.getQualifiedName()).append(".class, ");
+		out.append(getter == null ? "null" : erasure(getter.getReturnType()) + ".class").append(", new Class<?>[] {");
+		int n = 0;
+		for (TypeElement type : bound) {
+			out.append(n++ == 0 ? " " : ", ").append(type.getQualifiedName()).append(".class");
+		}
+		out.append(bound.isEmpty() ? "}) {\n" : " }) {\n");
+		
+		out.append("\t\t\t\tpublic Object newRequest(Object[] args) {\n");
+		out.append("\t\t\t\t\t").append(request.getQualifiedName()).append(" request = new ").append(request.getQualifiedName()).append("();\n");
+		for (int i = 0; i < parameters.size(); i++) {
+			ExecutableElement setter = setters.get(i);
+			out.append("\t\t\t\t\trequest.").append(setter.getSimpleName()).append("((").append(boxedErasure(setter.getParameters().get(0).asType())).append(")args[").append(i).append("]);\n");
+		}
+		out.append("\t\t\t\t\treturn request;\n");
+		out.append("\t\t\t\t}\n");
+		
+		out.append("\t\t\t\tpublic Object returnValue(Object response) {\n");
+		if (getter == null) {
+			out.append("\t\t\t\t\treturn null;\n");
+		}
+		else {
+			out.append("\t\t\t\t\treturn ((").append(response.getQualifiedName()).append(")response).getReturn();\n");
+		}
+		out.append("\t\t\t\t}\n");
+		
+		out.append("\t\t\t\tpublic Object[] arguments(Object request) {\n");
+		List<String> getters = new ArrayList<String>();
+		for (int i = 0; i < parameters.size(); i++) {
+			ExecutableElement argumentGetter = getter(request, setters.get(i).getSimpleName().toString().substring(3));
+			if (argumentGetter == null) {
+				getters = null;
+				out.append("\t\t\t\t\tthrow new IllegalStateException(\"Wrapper ").append(request.getQualifiedName()).append(" has no getter for argument ").append(i).append(" of ").append(name).append("\");\n");
+				break;
+			}
+			getters.add(argumentGetter.getSimpleName().toString());
+		}
+		if (getters != null) {
+			out.append("\t\t\t\t\t").append(request.getQualifiedName()).append(" wrapper = (").append(request.getQualifiedName()).append(")request;\n");
+			out.append("\t\t\t\t\treturn new Object[] {");
+			for (int i = 0; i < getters.size(); i++) {
+				out.append(i == 0 ? " " : ", ").append("wrapper.").append(getters.get(i)).append("()");
+			}
+			out.append(getters.isEmpty() ? "};\n" : " };\n");
+		}
+		out.append("\t\t\t\t}\n");
+		
+		out.append("\t\t\t\tpublic Object newResponse(Object value) {\n");
+		out.append("\t\t\t\t\t").append(response.getQualifiedName()).append(" response = new ").append(response.getQualifiedName()).append("();\n");
+		if (returnSetter != null) {
+			out.append("\t\t\t\t\tif (value != null) {\n");
+			out.append("\t\t\t\t\t\tresponse.setReturn((").append(boxedErasure(returnSetter.getParameters().get(0).asType())).append(")value);\n");
+			out.append("\t\t\t\t\t}\n");
+		}
+		else if (getter != null && types.isAssignable(types.erasure(getter.getReturnType()), types.erasure(elements.getTypeElement("java.util.Collection").asType()))) {
+			out.append("\t\t\t\t\tif (value != null) {\n");
+			out.append("\t\t\t\t\t\tresponse.getReturn().addAll((java.util.Collection)value);\n");
+			out.append("\t\t\t\t\t}\n");
+		}
+		else if (getter != null) {
+			out.append("\t\t\t\t\tif (value != null) {\n");
+			out.append("\t\t\t\t\t\tthrow new IllegalStateException(\"Wrapper ").append(response.getQualifiedName()).append(" has no setReturn\");\n");
+			out.append("\t\t\t\t\t}\n");
+		}
+		out.append("\t\t\t\t\treturn response;\n");
+		out.append("\t\t\t\t}\n");
+		
+		out.append("\t\t\t\tpublic Throwable newException(String name, String message) {\n");
+		for (Map.Entry<String, TypeElement> exception : exceptions(method).entrySet()) {
+			out.append("\t\t\t\t\tif (name.equals(\"").append(exception.getKey()).append("\")) {\n");
+			out.append("\t\t\t\t\t\treturn new ").append(exception.getValue().getQualifiedName()).append("(message);\n");
+			out.append("\t\t\t\t\t}\n");
+		}
+		out.append("\t\t\t\t\treturn null;\n");
+		out.append("\t\t\t\t}\n");
+		
+		out.append("\t\t\t},\n");
+	}
+	
+	private TypeElement wrapper(String name, ExecutableElement method) throws UnbindableException {
+		
+		TypeElement wrapper = elements.getTypeElement(name);
+		
+		if (wrapper == null) {
+			throw new MissingWrapperException("no wrapper " + name + " for " + method.getSimpleName());
+		}
+		
+		if (!wrapper.getModifiers().contains(Modifier.PUBLIC) || !hasConstructor(wrapper, true)) {
+			throw new UnbindableException("wrapper " + name + " needs to be public with a public no-arg constructor");
+		}
+		
+		return wrapper;
+	}
+	
+	/**
+	 * The wrapper's public setters in argument order.
+	 */
+	private List<ExecutableElement> setters(TypeElement wrapper) {
+		
+		List<String> properties = new ArrayList<String>();
+		
+		AnnotationMirror xmlType = annotation(wrapper, XML_TYPE);
+		if (xmlType != null) {
+			for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : xmlType.getElementValues().entrySet()) {
+				if (entry.getKey().getSimpleName().contentEquals("propOrder")) {
+					for (Object property : (List<?>)entry.getValue().getValue()) {
+						String name = (String)((AnnotationValue)property).getValue();
+						if (name.length() > 0) {
+							properties.add(name);
+						}
+					}
+				}
+			}
+		}
+		
+		if (properties.isEmpty()) {
+			for (VariableElement field : ElementFilter.fieldsIn(wrapper.getEnclosedElements())) {
+				if (!field.getModifiers().contains(Modifier.STATIC) && !field.getModifiers().contains(Modifier.TRANSIENT)) {
+					properties.add(field.getSimpleName().toString());
+				}
+			}
+		}
+		
+		Map<String, ExecutableElement> setters = new HashMap<String, ExecutableElement>();
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(wrapper))) {
+			if (method.getSimpleName().toString().startsWith("set") && method.getParameters().size() == 1 && method.getModifiers().contains(Modifier.PUBLIC)) {
+				setters.put(method.getSimpleName().toString(), method);
+			}
+		}
+		
+		List<ExecutableElement> ordered = new ArrayList<ExecutableElement>();
+		
+		for (String property : properties) {
+			
+			String name = property;
+			while (name.startsWith("_")) {
+				name = name.substring(1);
+			}
+			
+			ExecutableElement setter = setters.get("set" + name.substring(0, 1).toUpperCase() + name.substring(1));
+			
+			if (setter != null) {
+				ordered.add(setter);
+			}
+		}
+		
+		return ordered;
+	}
+	
+	/**
+	 * The wrapper's public getter for a capitalized property name, or null.
+	 */
+	private ExecutableElement getter(TypeElement wrapper, String property) {
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(wrapper))) {
+			
+			String name = method.getSimpleName().toString();
+			
+			if ((name.equals("get" + property) || name.equals("is" + property)) && method.getParameters().isEmpty() && method.getModifiers().contains(Modifier.PUBLIC) && method.getReturnType().getKind() != TypeKind.VOID) {
+				return method;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * The declared exceptions that can be built from a message, by simple
+	 * name.
+	 */
+	private Map<String, TypeElement> exceptions(ExecutableElement method) {
+		
+		Map<String, TypeElement> exceptions = new LinkedHashMap<String, TypeElement>();
+		
+		for (TypeMirror thrown : method.getThrownTypes()) {
+			
+			if (thrown.getKind() != TypeKind.DECLARED) {
+				continue;
+			}
+			
+			TypeElement type = (TypeElement)((DeclaredType)thrown).asElement();
+			
+			if (!type.getModifiers().contains(Modifier.PUBLIC) || type.getModifiers().contains(Modifier.ABSTRACT)) {
+				continue;
+			}
+			
+			for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+				
+				List<? extends VariableElement> parameters = constructor.getParameters();
+				
+				if (constructor.getModifiers().contains(Modifier.PUBLIC) && parameters.size() == 1 && erasure(parameters.get(0).asType()).equals("java.lang.String")) {
+					exceptions.put(type.getSimpleName().toString(), type);
+				}
+			}
+		}
+		
+		return exceptions;
+	}
+	
+	/**
+	 * The classes among <code>type</code>'s fields that JAXB must be told
+	 * about, by the same rules as <code>ServiceType.fieldTypes</code>.
+	 */
+	private Set<TypeElement> fieldTypes(TypeMirror type, String pkg) throws UnbindableException {
+		
+		Set<TypeElement> fieldTypes = new LinkedHashSet<TypeElement>();
+		type = types.erasure(type);
+		
+		if (type.getKind() != TypeKind.DECLARED) {
+			return fieldTypes;
+		}
+		
+		for (VariableElement field : ElementFilter.fieldsIn(((DeclaredType)type).asElement().getEnclosedElements())) {
+			
+			TypeMirror fieldType = types.erasure(field.asType());
+			
+			if (fieldType.getKind() != TypeKind.DECLARED) {
+				continue;
+			}
+			
+			TypeElement element = (TypeElement)((DeclaredType)fieldType).asElement();
+			
+			if (element.getKind().isInterface() || element.getKind() == ElementKind.ENUM) {
+				continue;
+			}
+			
+			if (elements.getBinaryName(element).toString().startsWith("java")) {
+				continue;
+			}
+			
+			if (annotation(element, XML_JAVA_TYPE_ADAPTER) != null) {
+				continue;
+			}
+			
+			if (!hasConstructor(element, false)) {
+				continue;
+			}
+			
+			if (!accessible(element, pkg)) {
+				throw new UnbindableException(element.getQualifiedName() + " can't be referenced from package " + pkg);
+			}
+			
+			fieldTypes.add(element);
+		}
+		
+		return fieldTypes;
+	}
+	
+	private boolean hasConstructor(TypeElement type, boolean publicOnly) {
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && (!publicOnly || constructor.getModifiers().contains(Modifier.PUBLIC))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private boolean accessible(TypeElement type, String pkg) {
+		
+		for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			
+			Set<Modifier> modifiers = e.getModifiers();
+			
+			if (modifiers.contains(Modifier.PRIVATE)) {
+				return false;
+			}
+			
+			if (!modifiers.contains(Modifier.PUBLIC) && !elements.getPackageOf(e).getQualifiedName().contentEquals(pkg)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private AnnotationMirror annotation(Element element, String annotationType) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement)mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationType)) {
+				return mirror;
+			}
+		}
+		return null;
+	}
+	
+	private String erasure(TypeMirror type) {
+		return types.erasure(type).toString();
+	}
+	
+	private String boxedErasure(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return types.boxedClass((PrimitiveType)type).getQualifiedName().toString();
+		}
+		return erasure(type);
+	}
+	
+	private static class UnbindableException extends Exception {
+		private static final long serialVersionUID = 1L;
+		
+		public UnbindableException(String message) {
+			super(message);
+		}
+	}
+	
+	private static class MissingWrapperException extends UnbindableException {
+		private static final long serialVersionUID = 1L;
+		
+		public MissingWrapperException(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Asynchronous counterpart to {@link Service}. Calls are made through a
+ * companion interface whose methods mirror those of the service interface
+ * (same names and parameter types) but return {@link CompletableFuture}s.
+ * Requests are sent with the non-blocking JDK http client, so no caller
+ * thread is held while a call is outstanding. The response is unmarshalled
+ * on the client's executor once its body has arrived in full.
+ * <p>
+ * Cancelling a returned future is best-effort: it completes the future but
+ * may not abort the exchange. Calls with a deadline are bounded by the
+ * request timeout instead.
+ */
+public class AsyncService implements InvocationHandler {
+	
+	private final Log log = LogFactory.getLog(this.getClass());
+
+	private final HttpClient client;
+	private final String url;
+	private final URI uri;
+	private final ServiceType type;
+	private final Map<Method, ServiceType.InvocationPlan> plans;
+	private final WireLog wireLog;
+	private final CallListeners listeners;
+	private final Compression compression;
+	private final CallTimeouts timeouts;
+	private final Object proxy;
+	
+	public AsyncService(HttpClient client, String url, ServiceType type, Class<?> asyncIface) {
+		this(client, url, type, asyncIface, WireLog.defaultInstance(), new CallListeners(), Compression.NONE, new CallTimeouts());
+	}
+	
+	public AsyncService(HttpClient client, String url, ServiceType type, Class<?> asyncIface, WireLog wireLog, CallListeners listeners, Compression compression, CallTimeouts timeouts) {
+		
+		if (url.endsWith("?wsdl")) {
+			
+			this.url = url.substring(0, url.length() - 5);
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Excluding ?wsdl parameter from url: " + url + " -> " + this.url);
+			}
+		}
+		else {
+			this.url = url;
+		}
+		
+		this.client = client;
+		this.uri = URI.create(this.url);
+		this.type = type;
+		this.wireLog = wireLog;
+		this.listeners = listeners;
+		this.compression = compression;
+		this.timeouts = timeouts;
+		
+		plans = new HashMap<Method, ServiceType.InvocationPlan>();
+		
+		for (Method method : asyncIface.getMethods()) {
+			
+			if (!CompletableFuture.class.equals(method.getReturnType())) {
+				throw new IllegalArgumentException("Async method " + method + " must return " + CompletableFuture.class.getName());
+			}
+			
+			try {
+				plans.put(method, type.plan(type.iface().getMethod(method.getName(), method.getParameterTypes())));
+			}
+			catch (NoSuchMethodException ex) {
+				throw new IllegalArgumentException("Async method " + method + " has no counterpart on " + type.iface().getName());
+			}
+		}
+		
+		ClassLoader cl = this.getClass().getClassLoader();
+		Class[] interfaces = new Class[]{ asyncIface };
+		proxy = Proxy.newProxyInstance(cl, interfaces, this);
+	}
+	
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		
+		if (args == null) {
+			args = new Object[0];
+		}
+		
+		if (method.getDeclaringClass() == Object.class) {
+			return Service.invokeObjectMethod(proxy, method, args, url);
+		}
+		
+		final ServiceType.InvocationPlan plan = plans.get(method);
+		
+		if (plan == null) {
+			throw new UnsupportedOperationException(method.toString());
+		}
+		
+		final Method syncMethod = plan.method();
+		
+		final Deadline deadline = timeouts.deadline(syncMethod);
+		
+		if (deadline != null && deadline.isExpired()) {
+			CompletableFuture<Object> expired = new CompletableFuture<Object>();
+			expired.completeExceptionally(new DeadlineExceededException("Deadline expired before calling " + syncMethod.getName()));
+			return expired;
+		}
+		
+		final boolean measured = !listeners.isEmpty();
+		final long start = measured ? System.nanoTime() : 0;
+		
+		final byte[] requestContent = type.request(plan, args);
+		
+		HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+			.header("Content-Type", "text/xml");
+		
+		byte[] body = requestContent;
+		
+		if (compression.compressRequest(requestContent.length)) {
+			body = Compression.gzip(requestContent);
+			builder.header("Content-Encoding", "gzip");
+		}
+		
+		if (compression.acceptCompressed()) {
+			builder.header("Accept-Encoding", Compression.ACCEPT_ENCODING);
+		}
+		
+		if (deadline != null) {
+			builder.timeout(Duration.ofNanos(Math.max(1, deadline.remainingNanos())));
+		}
+		
+		final long requestBytes = body.length;
+		final long sent = measured ? System.nanoTime() : 0;
+		
+		HttpRequest request = builder
+			.POST(HttpRequest.BodyPublishers.ofByteArray(body))
+			.build();
+		
+		final boolean logWire = wireLog.sample(log, syncMethod.getName());
+		
+		if (logWire) {
+			wireLog.log(log, "Sending post: " + url, requestContent);
+		}
+		
+		final CompletableFuture<Object> result = new CompletableFuture<Object>();
+		
+		final CompletableFuture<HttpResponse<byte[]>> exchange = client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+		
+		if (deadline != null) {
+			
+			/*
+			 * Cancelling the exchange doesn't abort it on every JDK, so the
+			 * request timeout set above is what bounds it; this completes the
+			 * caller's future on time regardless.
+			 */
+			final ScheduledFuture<?> abort = DeadlineTimer.schedule(() -> {
+				if (result.completeExceptionally(new DeadlineExceededException("Deadline expired calling " + syncMethod.getName() + " at " + url))) {
+					exchange.cancel(true);
+				}
+			}, deadline);
+			
+			result.whenComplete((r, error) -> abort.cancel(false));
+		}
+		
+		/*
+		 * The body handler collects the whole response without blocking, so
+		 * decoding it below reads only from memory and never holds one of the
+		 * client's threads waiting on the network.
+		 */
+		exchange.whenComplete((r, error) -> {
+			
+			long received = measured ? System.nanoTime() : 0;
+			long unmarshalNanos = 0;
+			CountingInputStream contentCounter = null;
+			CallMetrics.Outcome outcome = CallMetrics.Outcome.ERROR;
+			
+			try {
+				if (error != null) {
+					
+					if (deadline != null && deadline.isExpired()) {
+						error = new DeadlineExceededException("Deadline expired calling " + syncMethod.getName() + " at " + url, error);
+					}
+					
+					result.completeExceptionally(error);
+					return;
+				}
+				
+				if (result.isDone()) {
+					return;
+				}
+				
+				boolean fault = r.statusCode() != 200;
+				InputStream responseContent = new ByteArrayInputStream(r.body());
+				
+				Optional<String> contentEncoding = r.headers().firstValue("Content-Encoding");
+				
+				if (contentEncoding.isPresent()) {
+					responseContent = Compression.decode(contentEncoding.get(), responseContent);
+					
+					if (measured) {
+						responseContent = contentCounter = new CountingInputStream(responseContent);
+					}
+				}
+				
+				String contentType = r.headers().firstValue("Content-Type").orElse(null);
+				MtomResponse multipart = null;
+				
+				if (MtomResponse.isMultipart(contentType)) {
+					multipart = MtomResponse.read(contentType, responseContent);
+					responseContent = new ByteArrayInputStream(multipart.root());
+				}
+				
+				if (logWire) {
+					byte[] decoded = responseContent.readAllBytes();
+					wireLog.log(log, "Receiving post response: " + url, decoded);
+					responseContent = new ByteArrayInputStream(decoded);
+				}
+				
+				Object response = type.response(plan, responseContent, fault, multipart, null);
+				
+				if (measured) {
+					unmarshalNanos = System.nanoTime() - received;
+				}
+				
+				if (response instanceof Exception) {
+					outcome = CallMetrics.Outcome.FAULT;
+					result.completeExceptionally((Exception)response);
+				}
+				else {
+					outcome = CallMetrics.Outcome.SUCCESS;
+					result.complete(response);
+				}
+			}
+			catch (Throwable t) {
+				result.completeExceptionally(t);
+			}
+			finally {
+				if (measured) {
+					long responseBytes = r == null ? 0 : r.body().length;
+					long responseContentBytes = contentCounter == null ? responseBytes : contentCounter.count();
+					long totalNanos = System.nanoTime() - start;
+					listeners.fire(new CallMetrics(url, syncMethod.getName(), outcome, sent - start, received - sent, unmarshalNanos, totalNanos, requestBytes, responseBytes, requestContent.length, responseContentBytes));
+				}
+			}
+		});
+		
+		return result;
+	}
+	
+	public String url() {
+		return url;
+	}
+	
+	public ServiceType type() {
+		return type;
+	}
+	
+	public Object proxy() {
+		return proxy;
+	}
+}
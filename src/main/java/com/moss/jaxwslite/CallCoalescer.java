@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.attachment.AttachmentUnmarshaller;
+
+/**
+ * Single-flight deduplication of identical calls. While a call is in flight,
+ * further calls to the same endpoint and operation with the same marshalled
+ * request wait for its response instead of sending their own. Each waiting
+ * caller unmarshals the shared response body itself, so results and faults
+ * are never shared objects; a transport failure is rethrown to every caller.
+ * <p>
+ * Only methods marked {@link Coalesced}, or enabled with
+ * {@link #setEnabled}, are coalesced.
+ */
+public class CallCoalescer {
+	
+	private final ConcurrentMap<RequestKey, Flight> flights = new ConcurrentHashMap<RequestKey, Flight>();
+	private final ConcurrentMap<Method, Boolean> enabled = new ConcurrentHashMap<Method, Boolean>();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	
+	public void setEnabled(Method method, boolean enable) {
+		enabled.put(method, enable);
+	}
+	
+	public boolean isEnabled(Method method) {
+		
+		Boolean enable = enabled.get(method);
+		
+		if (enable == null) {
+			enable = method.isAnnotationPresent(Coalesced.class);
+			enabled.putIfAbsent(method, enable);
+		}
+		
+		return enable.booleanValue();
+	}
+	
+	/**
+	 * Joins the flight for this request, starting one if there is none. The
+	 * caller that starts a flight is its leader and must end it with
+	 * {@link Flight#complete} or {@link Flight#fail}.
+	 */
+	public Flight join(String url, Method method, byte[] request) {
+		
+		RequestKey key = new RequestKey(url, method, request);
+		Flight flight = new Flight(key, true);
+		Flight existing = flights.putIfAbsent(key, flight);
+		
+		if (existing != null) {
+			coalesced.incrementAndGet();
+			return new Flight(key, false, existing.response);
+		}
+		
+		sent.incrementAndGet();
+		return flight;
+	}
+	
+	/** Number of coalescable calls that went to the server. */
+	public long sent() {
+		return sent.get();
+	}
+	
+	/** Number of calls answered by another caller's request. */
+	public long coalesced() {
+		return coalesced.get();
+	}
+	
+	public class Flight {
+		
+		private final RequestKey key;
+		private final boolean leader;
+		private final CompletableFuture<Response> response;
+		
+		private Flight(RequestKey key, boolean leader) {
+			this(key, leader, new CompletableFuture<Response>());
+		}
+		
+		private Flight(RequestKey key, boolean leader, CompletableFuture<Response> response) {
+			this.key = key;
+			this.leader = leader;
+			this.response = response;
+		}
+		
+		public boolean isLeader() {
+			return leader;
+		}
+		
+		public void complete(boolean fault, byte[] content) {
+			complete(fault, content, null);
+		}
+		
+		/**
+		 * @param attachments what resolves the <code>xop:Include</code>
+		 * references in <code>content</code>, if the response was an MTOM
+		 * package
+		 */
+		public void complete(boolean fault, byte[] content, AttachmentUnmarshaller attachments) {
+			flights.remove(key, this);
+			response.complete(new Response(fault, content, attachments));
+		}
+		
+		/**
+		 * Ends the flight with <code>t</code>. Has no effect if it was already
+		 * completed.
+		 */
+		public void fail(Throwable t) {
+			flights.remove(key, this);
+			response.completeExceptionally(t);
+		}
+		
+		/**
+		 * Waits for the leader's response, but not past <code>deadline</code>
+		 * if one is given.
+		 */
+		public Response await(Deadline deadline) throws Throwable {
+			try {
+				if (deadline == null) {
+					return response.get();
+				}
+				return response.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+			}
+			catch (TimeoutException ex) {
+				throw new DeadlineExceededException("Deadline expired waiting for a coalesced call");
+			}
+			catch (ExecutionException ex) {
+				throw ex.getCause();
+			}
+		}
+	}
+	
+	public static class Response {
+		
+		private final boolean fault;
+		private final byte[] content;
+		private final AttachmentUnmarshaller attachments;
+		
+		Response(boolean fault, byte[] content, AttachmentUnmarshaller attachments) {
+			this.fault = fault;
+			this.content = content;
+			this.attachments = attachments;
+		}
+		
+		public boolean fault() {
+			return fault;
+		}
+		
+		public byte[] content() {
+			return content;
+		}
+		
+		public AttachmentUnmarshaller attachments() {
+			return attachments;
+		}
+	}
+}
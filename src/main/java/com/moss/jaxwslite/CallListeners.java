@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Copy-on-write set of {@link CallListener}s shared by a factory and its
+ * proxies. Proxies check {@link #isEmpty()} before doing any timing, so an
+ * unobserved call costs a single volatile read.
+ */
+public class CallListeners {
+	
+	private final Log log = LogFactory.getLog(this.getClass());
+	
+	private volatile CallListener[] listeners = new CallListener[0];
+	
+	public synchronized void add(CallListener listener) {
+		CallListener[] next = new CallListener[listeners.length + 1];
+		System.arraycopy(listeners, 0, next, 0, listeners.length);
+		next[listeners.length] = listener;
+		listeners = next;
+	}
+	
+	public synchronized void remove(CallListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				CallListener[] next = new CallListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, next, 0, i);
+				System.arraycopy(listeners, i + 1, next, i, listeners.length - i - 1);
+				listeners = next;
+				return;
+			}
+		}
+	}
+	
+	public boolean isEmpty() {
+		return listeners.length == 0;
+	}
+	
+	public void fire(CallMetrics call) {
+		for (CallListener listener : listeners) {
+			try {
+				listener.callCompleted(call);
+			}
+			catch (RuntimeException ex) {
+				log.warn("Call listener " + listener + " failed", ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+/**
+ * Timing and size of a single call, split into stages:
+ * <ul>
+ * <li><b>marshal</b>: building the request envelope. When the request is
+ * streamed this includes writing it to the connection.</li>
+ * <li><b>network</b>: the rest of the HTTP exchange up to the response
+ * headers (for async proxies, up to the full response body).</li>
+ * <li><b>unmarshal</b>: parsing the response. When the response is streamed
+ * this includes reading the body off the connection.</li>
+ * </ul>
+ * Stages that never ran (for instance after a connection failure) are zero.
+ * <p>
+ * Byte counts are as sent over the wire; when bodies are compressed the
+ * <code>...ContentBytes</code> counts give the uncompressed envelope sizes.
+ */
+public class CallMetrics {
+	
+	public enum Outcome {
+		/** A normal response was returned. */
+		SUCCESS,
+		/** The server answered with a SOAP fault. */
+		FAULT,
+		/** The call failed without a SOAP response (I/O error, bad XML, ...). */
+		ERROR
+	}
+	
+	private final String url;
+	private final String operation;
+	private final Outcome outcome;
+	private final long marshalNanos;
+	private final long networkNanos;
+	private final long unmarshalNanos;
+	private final long totalNanos;
+	private final long requestBytes;
+	private final long responseBytes;
+	private final long requestContentBytes;
+	private final long responseContentBytes;
+	
+	public CallMetrics(String url, String operation, Outcome outcome, long marshalNanos, long networkNanos, long unmarshalNanos, long totalNanos, long requestBytes, long responseBytes) {
+		this(url, operation, outcome, marshalNanos, networkNanos, unmarshalNanos, totalNanos, requestBytes, responseBytes, requestBytes, responseBytes);
+	}
+	
+	public CallMetrics(String url, String operation, Outcome outcome, long marshalNanos, long networkNanos, long unmarshalNanos, long totalNanos, long requestBytes, long responseBytes, long requestContentBytes, long responseContentBytes) {
+		this.url = url;
+		this.operation = operation;
+		this.outcome = outcome;
+		this.marshalNanos = marshalNanos;
+		this.networkNanos = networkNanos;
+		this.unmarshalNanos = unmarshalNanos;
+		this.totalNanos = totalNanos;
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+		this.requestContentBytes = requestContentBytes;
+		this.responseContentBytes = responseContentBytes;
+	}
+	
+	public String url() {
+		return url;
+	}
+	
+	public String operation() {
+		return operation;
+	}
+	
+	public Outcome outcome() {
+		return outcome;
+	}
+	
+	public long marshalNanos() {
+		return marshalNanos;
+	}
+	
+	public long networkNanos() {
+		return networkNanos;
+	}
+	
+	public long unmarshalNanos() {
+		return unmarshalNanos;
+	}
+	
+	public long totalNanos() {
+		return totalNanos;
+	}
+	
+	public long requestBytes() {
+		return requestBytes;
+	}
+	
+	public long responseBytes() {
+		return responseBytes;
+	}
+	
+	public long requestContentBytes() {
+		return requestContentBytes;
+	}
+	
+	public long responseContentBytes() {
+		return responseContentBytes;
+	}
+	
+	public String toString() {
+		return operation + "@" + url + " " + outcome + " total=" + totalNanos + "ns (marshal=" + marshalNanos + ", network=" + networkNanos + ", unmarshal=" + unmarshalNanos + ") bytes=" + requestBytes + "/" + responseBytes + " content=" + requestContentBytes + "/" + responseContentBytes;
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overall time limits for calls, per operation or as a default. A call is
+ * bound by the earlier of its configured timeout and the calling thread's
+ * {@link Deadline#current() deadline}.
+ */
+public class CallTimeouts {
+	
+	private final ConcurrentMap<Method, Long> timeouts = new ConcurrentHashMap<Method, Long>();
+	private volatile long defaultNanos;
+	
+	/**
+	 * Sets the timeout for operations without their own; 0 means none.
+	 */
+	public void setDefault(long timeout, TimeUnit unit) {
+		defaultNanos = unit.toNanos(timeout);
+	}
+	
+	/**
+	 * Sets the timeout for one operation; 0 means none, even if there is a
+	 * default.
+	 */
+	public void set(Method method, long timeout, TimeUnit unit) {
+		timeouts.put(method, unit.toNanos(timeout));
+	}
+	
+	/**
+	 * The deadline for a call to <code>method</code> starting now, or null
+	 * if it has none.
+	 */
+	public Deadline deadline(Method method) {
+		
+		Long timeout = timeouts.get(method);
+		long nanos = timeout != null ? timeout.longValue() : defaultNanos;
+		
+		Deadline deadline = Deadline.current();
+		
+		if (nanos > 0) {
+			deadline = Deadline.earliest(deadline, Deadline.after(nanos, TimeUnit.NANOSECONDS));
+		}
+		
+		return deadline;
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.ConnectTimeoutException;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+/**
+ * Transport over commons-httpclient 3.1. Bodies of unknown length are sent
+ * with chunked transfer encoding.
+ */
+public class CommonsHttpTransport implements Transport {
+	
+	private final HttpClient client;
+	
+	public CommonsHttpTransport(HttpClient client) {
+		this.client = client;
+	}
+	
+	public HttpClient client() {
+		return client;
+	}
+	
+	public Response post(String url, Map<String, String> headers, final Body body, Deadline deadline) throws IOException {
+		
+		final PostMethod post = new PostMethod(url);
+		
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			post.setRequestHeader(header.getKey(), header.getValue());
+		}
+		
+		post.setRequestEntity(new RequestEntity() {
+			public boolean isRepeatable() {
+				return body.isRepeatable();
+			}
+			public void writeRequest(OutputStream out) throws IOException {
+				body.writeRequest(out);
+			}
+			public long getContentLength() {
+				return body.getContentLength();
+			}
+			public String getContentType() {
+				return body.getContentType();
+			}
+		});
+		
+		final ScheduledFuture<?> abort;
+		
+		if (deadline != null) {
+			
+			/*
+			 * The socket timeout stops blocking reads early; the abort covers
+			 * slow trickles and the time spent writing the request.
+			 */
+			post.getParams().setSoTimeout((int)Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS)));
+			
+			abort = DeadlineTimer.schedule(new Runnable() {
+				public void run() {
+					post.abort();
+				}
+			}, deadline);
+		}
+		else {
+			abort = null;
+		}
+		
+		final int status;
+		
+		try {
+			status = client.executeMethod(post);
+		}
+		catch (ConnectTimeoutException ex) {
+			release(post, abort);
+			ConnectException ce = new ConnectException("Timed out connecting to " + url);
+			ce.initCause(ex);
+			throw ce;
+		}
+		catch (IOException ex) {
+			release(post, abort);
+			throw ex;
+		}
+		catch (RuntimeException ex) {
+			release(post, abort);
+			throw ex;
+		}
+		
+		return new Response() {
+			public int getStatusCode() {
+				return status;
+			}
+			public String getHeader(String name) {
+				Header header = post.getResponseHeader(name);
+				return header == null ? null : header.getValue();
+			}
+			public InputStream getBody() throws IOException {
+				return post.getResponseBodyAsStream();
+			}
+			public void release() {
+				CommonsHttpTransport.release(post, abort);
+			}
+			public void abort() {
+				post.abort();
+				CommonsHttpTransport.release(post, abort);
+			}
+		};
+	}
+	
+	private static void release(PostMethod post, ScheduledFuture<?> abort) {
+		
+		if (abort != null) {
+			abort.cancel(false);
+		}
+		
+		post.releaseConnection();
+	}
+}
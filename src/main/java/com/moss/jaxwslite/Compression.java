@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP compression settings for an endpoint. Responses are requested with
+ * <code>Accept-Encoding: gzip, deflate</code> and decoded as they are read.
+ * Requests are gzipped when their envelope is at least
+ * <code>requestThreshold</code> bytes; a negative threshold never compresses
+ * requests, since not every server accepts compressed request bodies.
+ * <p>
+ * The size of a streamed request is not known until it has been written, so
+ * streamed requests are compressed when the previous request for the same
+ * operation reached the threshold.
+ */
+public class Compression {
+	
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+	
+	/** Neither advertises nor sends compressed bodies. */
+	public static final Compression NONE = new Compression(false, -1);
+	
+	/** Accepts compressed responses; requests are sent as is. */
+	public static final Compression RESPONSES = new Compression(true, -1);
+	
+	private final boolean acceptCompressed;
+	private final int requestThreshold;
+	
+	public Compression(boolean acceptCompressed, int requestThreshold) {
+		this.acceptCompressed = acceptCompressed;
+		this.requestThreshold = requestThreshold;
+	}
+	
+	public boolean acceptCompressed() {
+		return acceptCompressed;
+	}
+	
+	public int requestThreshold() {
+		return requestThreshold;
+	}
+	
+	public boolean compressesRequests() {
+		return requestThreshold >= 0;
+	}
+	
+	/**
+	 * Whether a request of <code>size</code> bytes should be gzipped. A
+	 * negative size means unknown, and is never compressed.
+	 */
+	public boolean compressRequest(long size) {
+		return requestThreshold >= 0 && size >= requestThreshold;
+	}
+	
+	/**
+	 * Wraps <code>in</code> so it reads the decoded body for the given
+	 * <code>Content-Encoding</code> header value, which may be null.
+	 */
+	public static InputStream decode(String contentEncoding, InputStream in) throws IOException {
+		
+		if (contentEncoding == null) {
+			return in;
+		}
+		
+		String encoding = contentEncoding.trim().toLowerCase();
+		
+		if (encoding.length() == 0 || encoding.equals("identity")) {
+			return in;
+		}
+		else if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			return new GZIPInputStream(in, 8 * 1024);
+		}
+		else if (encoding.equals("deflate")) {
+			
+			/*
+			 * "deflate" should be zlib-wrapped, but some servers send a raw
+			 * deflate stream; a zlib header always has compression method 8
+			 * in its low nibble.
+			 */
+			PushbackInputStream pushback = new PushbackInputStream(in, 1);
+			int first = pushback.read();
+			
+			if (first == -1) {
+				return pushback;
+			}
+			pushback.unread(first);
+			
+			boolean zlib = (first & 0x0f) == 8;
+			return new InflaterInputStream(pushback, new Inflater(!zlib), 8 * 1024);
+		}
+		else {
+			throw new IOException("Unsupported response Content-Encoding: " + contentEncoding);
+		}
+	}
+	
+	static byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(content);
+		gzip.close();
+		return out.toByteArray();
+	}
+	
+	public String toString() {
+		return "Compression(accept=" + acceptCompressed + ", requestThreshold=" + requestThreshold + ")";
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulkhead for one endpoint: caps the calls in flight to it, so a slow
+ * backend holds at most that many connections and threads. Calls over the
+ * limit wait up to a bounded time for a slot, then fail with
+ * {@link EndpointOverloadedException}.
+ * <p>
+ * The limit is either fixed, or adapted with AIMD: it grows by about one
+ * per limit's worth of successful calls while the endpoint is busy, and
+ * shrinks by 10% on every failed or slow call.
+ */
+public class ConcurrencyLimiter {
+	
+	private static final double BACKOFF_RATIO = 0.9;
+	
+	/**
+	 * A fixed limit of <code>limit</code> concurrent calls.
+	 */
+	public static ConcurrencyLimiter fixed(int limit, long maxWait, TimeUnit unit) {
+		return new ConcurrencyLimiter(limit, limit, limit, 0, unit.toNanos(maxWait));
+	}
+	
+	/**
+	 * An adaptive limit between 1 and <code>maxLimit</code>, starting at
+	 * <code>initialLimit</code>. Calls that fail without a response, or that
+	 * take longer than <code>slowCall</code> (unless it is 0), count as
+	 * congestion.
+	 */
+	public static ConcurrencyLimiter aimd(int initialLimit, int maxLimit, long slowCall, long maxWait, TimeUnit unit) {
+		return new ConcurrencyLimiter(initialLimit, 1, maxLimit, unit.toNanos(slowCall), unit.toNanos(maxWait));
+	}
+	
+	private final int minLimit;
+	private final int maxLimit;
+	private final long slowCallNanos;
+	private final long maxWaitNanos;
+	private double limit;
+	private int inFlight;
+	private long rejected;
+	
+	private ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long slowCallNanos, long maxWaitNanos) {
+		
+		if (minLimit < 1 || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Invalid limits: initial=" + initialLimit + ", min=" + minLimit + ", max=" + maxLimit);
+		}
+		
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.slowCallNanos = slowCallNanos;
+		this.maxWaitNanos = maxWaitNanos;
+	}
+	
+	public boolean isAdaptive() {
+		return minLimit != maxLimit;
+	}
+	
+	/**
+	 * Takes a slot, waiting for one if the endpoint is at its limit. Every
+	 * successful acquire must be followed by a {@link #release}.
+	 */
+	public synchronized void acquire(String url) {
+		
+		if (inFlight < getLimit()) {
+			inFlight++;
+			return;
+		}
+		
+		long deadline = System.nanoTime() + maxWaitNanos;
+		
+		while (inFlight >= getLimit()) {
+			
+			long remaining = deadline - System.nanoTime();
+			
+			if (remaining <= 0) {
+				rejected++;
+				throw new EndpointOverloadedException(url, getLimit());
+			}
+			
+			try {
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(ex);
+			}
+		}
+		
+		inFlight++;
+	}
+	
+	/**
+	 * Reports the outcome of a call and returns its slot.
+	 * 
+	 * @param failed whether the call ended without a response from the
+	 * endpoint
+	 */
+	public synchronized void release(long elapsedNanos, boolean failed) {
+		record(elapsedNanos, failed);
+		release();
+	}
+	
+	/**
+	 * Reports the outcome of a call that still holds its slot, such as one
+	 * whose streamed result is yet to be read; the slot is returned later
+	 * with {@link #release()}.
+	 * 
+	 * @param failed whether the call ended without a response from the
+	 * endpoint
+	 */
+	public synchronized void record(long elapsedNanos, boolean failed) {
+		
+		if (isAdaptive()) {
+			
+			boolean slow = slowCallNanos > 0 && elapsedNanos > slowCallNanos;
+			
+			if (failed || slow) {
+				limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+			}
+			else if (inFlight * 2 >= limit) {
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+		}
+	}
+	
+	/**
+	 * Returns a slot whose call was already reported with {@link #record}.
+	 */
+	public synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+	
+	public synchronized int getLimit() {
+		return (int)limit;
+	}
+	
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+	
+	/** Calls refused because no slot became free in time. */
+	public synchronized long getRejected() {
+		return rejected;
+	}
+	
+	public String toString() {
+		return "ConcurrencyLimiter(limit=" + getLimit() + ", inFlight=" + getInFlight() + ", rejected=" + getRejected() + ")";
+	}
+}
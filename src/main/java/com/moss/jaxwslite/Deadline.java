@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a call must have completed, covering connecting,
+ * sending the request, waiting for the response and reading its body.
+ * <p>
+ * A deadline can be put in scope for the calling thread; every proxy call
+ * the thread makes inside the scope is bound by it, as well as by any
+ * per-operation or factory timeout (see {@link CallTimeouts}):
+ * <pre>
+ * try (Deadline.Scope scope = Deadline.after(2, TimeUnit.SECONDS).enter()) {
+ *     port.lookup(id);
+ *     port.store(item);
+ * }
+ * </pre>
+ * Calls that run out of time fail with {@link DeadlineExceededException}.
+ */
+public final class Deadline {
+	
+	private static final ThreadLocal<Deadline> current = new ThreadLocal<Deadline>();
+	
+	public static Deadline after(long timeout, TimeUnit unit) {
+		return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+	}
+	
+	/**
+	 * The deadline in scope for the calling thread, or null.
+	 */
+	public static Deadline current() {
+		return current.get();
+	}
+	
+	/**
+	 * The earlier of two deadlines, either of which may be null.
+	 */
+	public static Deadline earliest(Deadline a, Deadline b) {
+		
+		if (a == null) {
+			return b;
+		}
+		else if (b == null) {
+			return a;
+		}
+		
+		return a.nanoTime - b.nanoTime <= 0 ? a : b;
+	}
+	
+	private final long nanoTime;
+	
+	private Deadline(long nanoTime) {
+		this.nanoTime = nanoTime;
+	}
+	
+	public long remainingNanos() {
+		return nanoTime - System.nanoTime();
+	}
+	
+	public long remaining(TimeUnit unit) {
+		return unit.convert(remainingNanos(), TimeUnit.NANOSECONDS);
+	}
+	
+	public boolean isExpired() {
+		return remainingNanos() <= 0;
+	}
+	
+	/**
+	 * Puts this deadline in scope for the calling thread until the scope is
+	 * closed. Scopes nest; an inner scope cannot extend an outer deadline.
+	 */
+	public Scope enter() {
+		Deadline previous = current.get();
+		current.set(earliest(previous, this));
+		return new Scope(previous);
+	}
+	
+	public String toString() {
+		return "Deadline(" + remaining(TimeUnit.MILLISECONDS) + "ms)";
+	}
+	
+	public static final class Scope implements AutoCloseable {
+		
+		private final Deadline previous;
+		
+		private Scope(Deadline previous) {
+			this.previous = previous;
+		}
+		
+		public void close() {
+			if (previous == null) {
+				current.remove();
+			}
+			else {
+				current.set(previous);
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * One replica behind a {@link EndpointPool}: its url, optional
+ * {@link ConcurrencyLimiter}, calls outstanding and ejection state.
+ */
+public class Endpoint {
+	
+	private final Log log = LogFactory.getLog(this.getClass());
+	
+	private final String url;
+	private volatile ConcurrencyLimiter limiter;
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private volatile long ejectedUntil;
+	private volatile boolean ejected;
+	
+	public Endpoint(String url, ConcurrencyLimiter limiter) {
+		
+		if (url.endsWith("?wsdl")) {
+			
+			this.url = url.substring(0, url.length() - 5);
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Excluding ?wsdl parameter from url: " + url + " -> " + this.url);
+			}
+		}
+		else {
+			this.url = url;
+		}
+		
+		this.limiter = limiter;
+	}
+	
+	public String url() {
+		return url;
+	}
+	
+	/**
+	 * The bulkhead for this endpoint, or null if its calls are not limited.
+	 */
+	public ConcurrencyLimiter limiter() {
+		return limiter;
+	}
+	
+	/**
+	 * Replaces the bulkhead. Calls already in flight return their slots to
+	 * the limiter they took them from.
+	 */
+	void setLimiter(ConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+	}
+	
+	/** Calls currently sent to this endpoint and not yet answered. */
+	public int outstanding() {
+		return outstanding.get();
+	}
+	
+	public boolean isEjected() {
+		return ejected && System.nanoTime() - ejectedUntil < 0;
+	}
+	
+	void callStarted() {
+		outstanding.incrementAndGet();
+	}
+	
+	void callEnded() {
+		outstanding.decrementAndGet();
+	}
+	
+	void eject(long nanos) {
+		
+		if (log.isWarnEnabled() && !isEjected()) {
+			log.warn("Ejecting unreachable endpoint " + url + " for " + (nanos / 1000000) + "ms");
+		}
+		
+		ejectedUntil = System.nanoTime() + nanos;
+		ejected = true;
+	}
+	
+	void reachable() {
+		ejected = false;
+	}
+	
+	long ejectedUntil() {
+		return ejectedUntil;
+	}
+	
+	public String toString() {
+		return url + "(outstanding=" + outstanding() + (isEjected() ? ", ejected" : "") + ")";
+	}
+}
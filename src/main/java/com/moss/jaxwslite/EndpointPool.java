@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The replicas a proxy balances its calls across. Replicas that cannot be
+ * connected to are ejected for a while and skipped, unless every replica is
+ * ejected, in which case the one due back first is tried.
+ */
+public class EndpointPool {
+	
+	public enum Balancing {
+		/** The replica with the fewest calls outstanding. */
+		LEAST_OUTSTANDING,
+		/**
+		 * The less loaded of two random replicas; nearly as good as
+		 * least-outstanding, without all callers herding onto the same
+		 * replica.
+		 */
+		POWER_OF_TWO_CHOICES
+	}
+	
+	private final List<Endpoint> endpoints;
+	private final Balancing balancing;
+	private final long ejectionNanos;
+	private final String name;
+	
+	public EndpointPool(List<Endpoint> endpoints, Balancing balancing, long ejectionTime, TimeUnit unit) {
+		
+		if (endpoints.isEmpty()) {
+			throw new IllegalArgumentException("No endpoints");
+		}
+		
+		this.endpoints = Collections.unmodifiableList(new ArrayList<Endpoint>(endpoints));
+		this.balancing = balancing;
+		this.ejectionNanos = unit.toNanos(ejectionTime);
+		
+		StringBuilder name = new StringBuilder();
+		for (Endpoint endpoint : this.endpoints) {
+			if (name.length() > 0) {
+				name.append(',');
+			}
+			name.append(endpoint.url());
+		}
+		this.name = name.toString();
+	}
+	
+	public static EndpointPool single(String url, ConcurrencyLimiter limiter) {
+		return new EndpointPool(Collections.singletonList(new Endpoint(url, limiter)), Balancing.LEAST_OUTSTANDING, 0, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * The endpoint urls, comma separated.
+	 */
+	public String name() {
+		return name;
+	}
+	
+	public List<Endpoint> endpoints() {
+		return endpoints;
+	}
+	
+	/**
+	 * Picks the replica for the next call, not counting those in
+	 * <code>exclude</code>. Returns null if every replica is excluded.
+	 */
+	public Endpoint choose(List<Endpoint> exclude) {
+		
+		if (endpoints.size() == 1) {
+			Endpoint only = endpoints.get(0);
+			return exclude.contains(only) ? null : only;
+		}
+		
+		List<Endpoint> candidates = new ArrayList<Endpoint>(endpoints.size());
+		Endpoint dueBack = null;
+		
+		for (Endpoint endpoint : endpoints) {
+			
+			if (exclude.contains(endpoint)) {
+				continue;
+			}
+			
+			if (endpoint.isEjected()) {
+				if (dueBack == null || endpoint.ejectedUntil() - dueBack.ejectedUntil() < 0) {
+					dueBack = endpoint;
+				}
+			}
+			else {
+				candidates.add(endpoint);
+			}
+		}
+		
+		if (candidates.isEmpty()) {
+			return dueBack;
+		}
+		
+		if (candidates.size() == 1) {
+			return candidates.get(0);
+		}
+		
+		if (balancing == Balancing.POWER_OF_TWO_CHOICES) {
+			
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int a = random.nextInt(candidates.size());
+			int b = random.nextInt(candidates.size() - 1);
+			
+			if (b >= a) {
+				b++;
+			}
+			
+			Endpoint first = candidates.get(a);
+			Endpoint second = candidates.get(b);
+			return second.outstanding() < first.outstanding() ? second : first;
+		}
+		else {
+			
+			Endpoint best = null;
+			int offset = ThreadLocalRandom.current().nextInt(candidates.size());
+			
+			for (int i = 0; i < candidates.size(); i++) {
+				Endpoint endpoint = candidates.get((offset + i) % candidates.size());
+				if (best == null || endpoint.outstanding() < best.outstanding()) {
+					best = endpoint;
+				}
+			}
+			
+			return best;
+		}
+	}
+	
+	/**
+	 * Takes <code>endpoint</code> out of rotation after a failed connection.
+	 */
+	public void eject(Endpoint endpoint) {
+		if (endpoints.size() > 1) {
+			endpoint.eject(ejectionNanos);
+		}
+	}
+	
+	public String toString() {
+		return endpoints.toString();
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips another request entity as it is written to the connection, without
+ * buffering the compressed body. The caller sets the
+ * <code>Content-Encoding</code> header.
+ */
+public class GzipRequestEntity implements Transport.Body {
+	
+	private final Transport.Body entity;
+	private long bytesWritten;
+	
+	public GzipRequestEntity(Transport.Body entity) {
+		this.entity = entity;
+	}
+	
+	public boolean isRepeatable() {
+		return entity.isRepeatable();
+	}
+	
+	public void writeRequest(OutputStream out) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream(out);
+		GZIPOutputStream gzip = new GZIPOutputStream(counter, 8 * 1024);
+		entity.writeRequest(gzip);
+		gzip.finish();
+		gzip.flush();
+		bytesWritten = counter.count();
+	}
+	
+	/**
+	 * Compressed size of the body the last time it was written.
+	 */
+	public long bytesWritten() {
+		return bytesWritten;
+	}
+	
+	public long getContentLength() {
+		return -1;
+	}
+	
+	public String getContentType() {
+		return entity.getContentType();
+	}
+}
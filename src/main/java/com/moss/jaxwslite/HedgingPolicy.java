@@ -0,0 +1,314 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tail latency policy for idempotent methods (marked {@link Idempotent}, or
+ * enabled with {@link #setIdempotent}).
+ * <p>
+ * <b>Hedging:</b> a call that has not returned after the given percentile of
+ * the method's recent latencies gets a second request, normally on another
+ * replica, and the first response wins. The losing request runs to
+ * completion in the background. Latencies are kept in windows of 1000
+ * calls; the delay is worked out from the current window once it has 100
+ * samples (before that, from the previous window), and only every 100
+ * calls, not on each one. Until there are 100 samples, the fallback delay
+ * is used.
+ * <p>
+ * <b>Retries:</b> calls that fail with an I/O error are retried with
+ * exponential backoff and full jitter.
+ * <p>
+ * Hedges and retries both draw on a {@link RetryBudget}.
+ */
+public class HedgingPolicy {
+	
+	private static final int MIN_SAMPLES = 100;
+	private static final int WINDOW_SAMPLES = 1000;
+	
+	private static ExecutorService defaultExecutor;
+	
+	private static synchronized Executor defaultExecutor() {
+		
+		if (defaultExecutor == null) {
+			
+			final AtomicInteger threads = new AtomicInteger();
+			
+			defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "jaxws-lite hedge " + threads.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		
+		return defaultExecutor;
+	}
+	
+	private final double percentile;
+	private final long minDelayNanos;
+	private final long fallbackDelayNanos;
+	private final ConcurrentMap<Method, Boolean> idempotent = new ConcurrentHashMap<Method, Boolean>();
+	private final ConcurrentMap<Method, LatencyWindow> latencies = new ConcurrentHashMap<Method, LatencyWindow>();
+	private volatile int maxRetries = 2;
+	private volatile long backoffNanos = TimeUnit.MILLISECONDS.toNanos(50);
+	private volatile long maxBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+	private volatile RetryBudget budget = new RetryBudget(0.1, 10);
+	private volatile Executor executor;
+	
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong budgetExhausted = new AtomicLong();
+	
+	/**
+	 * @param percentile latency percentile after which a call is hedged, or
+	 * 0 to only retry
+	 * @param minDelay lower bound on the hedge delay
+	 * @param fallbackDelay hedge delay while there are too few samples
+	 */
+	public HedgingPolicy(double percentile, long minDelay, long fallbackDelay, TimeUnit unit) {
+		this.percentile = percentile;
+		this.minDelayNanos = unit.toNanos(minDelay);
+		this.fallbackDelayNanos = unit.toNanos(fallbackDelay);
+	}
+	
+	public void setIdempotent(Method method, boolean enable) {
+		idempotent.put(method, enable);
+	}
+	
+	public boolean isIdempotent(Method method) {
+		
+		Boolean enable = idempotent.get(method);
+		
+		if (enable == null) {
+			enable = method.isAnnotationPresent(Idempotent.class);
+			idempotent.putIfAbsent(method, enable);
+		}
+		
+		return enable.booleanValue();
+	}
+	
+	/**
+	 * Retries calls that failed with an I/O error up to <code>maxRetries</code>
+	 * times, waiting a random time up to <code>backoff</code> doubled for
+	 * every retry, capped at <code>maxBackoff</code>. Defaults to 2 retries
+	 * and 50ms to 1s.
+	 */
+	public void setRetries(int maxRetries, long backoff, long maxBackoff, TimeUnit unit) {
+		this.maxRetries = maxRetries;
+		this.backoffNanos = unit.toNanos(backoff);
+		this.maxBackoffNanos = unit.toNanos(maxBackoff);
+	}
+	
+	/**
+	 * Defaults to 10 tokens, refilled at one per 10 calls.
+	 */
+	public void setBudget(RetryBudget budget) {
+		this.budget = budget;
+	}
+	
+	public RetryBudget budget() {
+		return budget;
+	}
+	
+	/**
+	 * Sets the executor hedged calls run on. Each hedged call occupies a
+	 * thread per request in flight. Defaults to a shared cached pool of
+	 * daemon threads.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	Executor executor() {
+		Executor e = executor;
+		return e != null ? e : defaultExecutor();
+	}
+	
+	public int maxRetries() {
+		return maxRetries;
+	}
+	
+	/**
+	 * How long to wait before the <code>retry</code>th retry (from 0).
+	 */
+	public long backoffNanos(int retry) {
+		long cap = Math.min(maxBackoffNanos, backoffNanos << Math.min(retry, 30));
+		return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap);
+	}
+	
+	/**
+	 * How long a call to <code>method</code> may take before it is hedged,
+	 * or -1 if calls are not hedged.
+	 */
+	public long hedgeDelayNanos(Method method) {
+		
+		if (percentile <= 0) {
+			return -1;
+		}
+		
+		LatencyWindow window = latencies.get(method);
+		long delay = window == null ? -1 : window.percentileNanos;
+		
+		if (delay < 0) {
+			return fallbackDelayNanos;
+		}
+		
+		return Math.max(minDelayNanos, delay);
+	}
+	
+	/**
+	 * Records the latency of a request that got a response.
+	 */
+	public void record(Method method, long nanos) {
+		window(method).record(nanos);
+	}
+	
+	/**
+	 * Response latencies of <code>method</code> in the current window, in
+	 * nanoseconds.
+	 */
+	public LatencyHistogram latency(Method method) {
+		return window(method).current;
+	}
+	
+	private LatencyWindow window(Method method) {
+		
+		LatencyWindow window = latencies.get(method);
+		
+		if (window == null) {
+			window = new LatencyWindow();
+			LatencyWindow existing = latencies.putIfAbsent(method, window);
+			if (existing != null) {
+				window = existing;
+			}
+		}
+		
+		return window;
+	}
+	
+	void hedged() {
+		hedges.incrementAndGet();
+	}
+	
+	void hedgeWon() {
+		hedgeWins.incrementAndGet();
+	}
+	
+	void retried() {
+		retries.incrementAndGet();
+	}
+	
+	void denied() {
+		budgetExhausted.incrementAndGet();
+	}
+	
+	/** Hedge requests sent. */
+	public long hedges() {
+		return hedges.get();
+	}
+	
+	/** Calls answered by their hedge request rather than the first one. */
+	public long hedgeWins() {
+		return hedgeWins.get();
+	}
+	
+	public long retries() {
+		return retries.get();
+	}
+	
+	/** Hedges and retries skipped because the budget was spent. */
+	public long budgetExhausted() {
+		return budgetExhausted.get();
+	}
+	
+	/**
+	 * One method's latencies: the current window and the one before it,
+	 * swapped every {@link #WINDOW_SAMPLES} samples, with the hedge
+	 * percentile worked out every {@link #MIN_SAMPLES}.
+	 */
+	private class LatencyWindow {
+		
+		volatile LatencyHistogram current = new LatencyHistogram();
+		volatile LatencyHistogram previous;
+		volatile long percentileNanos = -1;
+		final AtomicLong samples = new AtomicLong();
+		
+		void record(long nanos) {
+			
+			current.record(nanos);
+			
+			long n = samples.incrementAndGet();
+			
+			if (n % MIN_SAMPLES == 0) {
+				refresh(n);
+			}
+		}
+		
+		private synchronized void refresh(long n) {
+			
+			if (n % WINDOW_SAMPLES == 0) {
+				previous = current;
+				current = new LatencyHistogram();
+			}
+			
+			LatencyHistogram basis = current.count() >= MIN_SAMPLES ? current : previous;
+			
+			if (basis != null) {
+				percentileNanos = basis.percentile(percentile);
+			}
+		}
+	}
+	
+	public String toString() {
+		return "HedgingPolicy(hedges=" + hedges() + ", hedgeWins=" + hedgeWins() + ", retries=" + retries() + ", budgetExhausted=" + budgetExhausted() + ")";
+	}
+}
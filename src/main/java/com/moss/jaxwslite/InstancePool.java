@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of instances that are expensive to create but not thread
+ * safe, such as JAXB marshallers. Callers never wait on the pool: when it is
+ * empty a new instance is created, and when it is full a returned instance is
+ * simply dropped. Because nothing is bound to a thread, this behaves the same
+ * for platform and virtual threads.
+ */
+public class InstancePool<T> {
+	
+	private final ArrayBlockingQueue<T> idle;
+	private final Callable<T> factory;
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private final AtomicLong discarded = new AtomicLong();
+	
+	public InstancePool(int capacity, Callable<T> factory) {
+		this.idle = new ArrayBlockingQueue<T>(capacity);
+		this.factory = factory;
+	}
+	
+	public T acquire() throws Exception {
+		
+		T instance = idle.poll();
+		
+		if (instance != null) {
+			reused.incrementAndGet();
+			return instance;
+		}
+		
+		created.incrementAndGet();
+		return factory.call();
+	}
+	
+	/**
+	 * Returns an instance to the pool. Instances that were in use when
+	 * something failed should not be released.
+	 */
+	public void release(T instance) {
+		if (!idle.offer(instance)) {
+			discarded.incrementAndGet();
+		}
+	}
+	
+	/** Number of instances created because the pool was empty. */
+	public long created() {
+		return created.get();
+	}
+	
+	/** Number of acquisitions served from the pool. */
+	public long reused() {
+		return reused.get();
+	}
+	
+	/** Number of released instances dropped because the pool was full. */
+	public long discarded() {
+		return discarded.get();
+	}
+	
+	public int idle() {
+		return idle.size();
+	}
+	
+	public String toString() {
+		return "created=" + created() + ", reused=" + reused() + ", discarded=" + discarded() + ", idle=" + idle();
+	}
+}
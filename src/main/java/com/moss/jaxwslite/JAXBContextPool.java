@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Shares JAXB contexts between service types. A type is given an existing
+ * context that already binds all of its classes, and only gets a new one of
+ * its own if there is none.
+ */
+public class JAXBContextPool {
+	
+	private final Log log = LogFactory.getLog(this.getClass());
+	
+	private final CopyOnWriteArrayList<Entry> entries = new CopyOnWriteArrayList<Entry>();
+	
+	/**
+	 * A context that binds at least <code>classes</code>.
+	 */
+	public JAXBContext get(Set<Class> classes) throws JAXBException {
+		
+		for (Entry entry : entries) {
+			if (entry.classes.containsAll(classes)) {
+				return entry.context;
+			}
+		}
+		
+		return add(classes);
+	}
+	
+	/**
+	 * Builds one context for the union of several types' classes, so that
+	 * each of them can share it. Returns false, leaving the types to build
+	 * their own, if the classes cannot be bound together (for instance two
+	 * of them declare the same XML type name).
+	 */
+	public boolean share(Set<Class> classes) {
+		try {
+			add(classes);
+			return true;
+		}
+		catch (JAXBException ex) {
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Cannot share one JAXB context between " + classes.size() + " classes, building separate contexts", ex);
+			}
+			
+			return false;
+		}
+	}
+	
+	/** The number of distinct contexts built. */
+	public int size() {
+		return entries.size();
+	}
+	
+	private JAXBContext add(Set<Class> classes) throws JAXBException {
+		JAXBContext context = JAXBContext.newInstance(classes.toArray(new Class[0]));
+		entries.add(new Entry(Collections.unmodifiableSet(new HashSet<Class>(classes)), context));
+		return context;
+	}
+	
+	private static class Entry {
+		
+		final Set<Class> classes;
+		final JAXBContext context;
+		
+		Entry(Set<Class> classes, JAXBContext context) {
+			this.classes = classes;
+			this.context = context;
+		}
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Transport over the JDK {@link HttpClient}, which keeps connections alive
+ * and multiplexes concurrent calls to an endpoint over one HTTP/2
+ * connection where the server supports it (over TLS, or by h2c upgrade),
+ * falling back to HTTP/1.1.
+ * <p>
+ * The JDK client pulls request bodies rather than letting the caller write
+ * them, so bodies that are not already bytes are written through a pipe by
+ * a separate thread as the client reads them, and never held in memory
+ * whole. Response bodies are streamed.
+ */
+public class JdkHttpTransport implements Transport {
+	
+	private static final Executor WRITERS = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "jaxws-lite-body-writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	private final HttpClient client;
+	
+	public JdkHttpTransport(int connectionTimeout) {
+		this(HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_2)
+			.connectTimeout(Duration.ofMillis(connectionTimeout))
+			.build());
+	}
+	
+	public JdkHttpTransport(HttpClient client) {
+		this.client = client;
+	}
+	
+	public HttpClient client() {
+		return client;
+	}
+	
+	public Response post(String url, Map<String, String> headers, final Body body, Deadline deadline) throws IOException {
+		
+		HttpRequest.BodyPublisher publisher;
+		final AtomicReference<InputStream> pipe = new AtomicReference<InputStream>();
+		final AtomicReference<RequestMarshalException> unmarshallable = new AtomicReference<RequestMarshalException>();
+		
+		if (body instanceof BytesRequestEntity) {
+			publisher = HttpRequest.BodyPublishers.ofByteArray(((BytesRequestEntity)body).content());
+		}
+		else {
+			publisher = HttpRequest.BodyPublishers.ofInputStream(new Supplier<InputStream>() {
+				public InputStream get() {
+					
+					if (pipe.get() != null && !body.isRepeatable()) {
+						throw new UncheckedIOException(new IOException("Request body can't be sent again"));
+					}
+					
+					InputStream in = pipe(body, unmarshallable);
+					close(pipe.getAndSet(in));
+					return in;
+				}
+			});
+		}
+		
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+			.header("Content-Type", body.getContentType());
+		
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			builder.header(header.getKey(), header.getValue());
+		}
+		
+		if (deadline != null) {
+			builder.timeout(Duration.ofNanos(Math.max(1, deadline.remainingNanos())));
+		}
+		
+		HttpRequest request = builder.POST(publisher).build();
+		
+		final HttpResponse<InputStream> response;
+		boolean sent = false;
+		
+		try {
+			response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+			sent = true;
+		}
+		catch (HttpConnectTimeoutException ex) {
+			ConnectException ce = new ConnectException("Timed out connecting to " + url);
+			ce.initCause(ex);
+			throw ce;
+		}
+		catch (IOException ex) {
+			
+			if (unmarshallable.get() != null) {
+				throw unmarshallable.get();
+			}
+			
+			throw ex;
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			IOException ioe = new IOException("Interrupted while posting to " + url);
+			ioe.initCause(ex);
+			throw ioe;
+		}
+		finally {
+			
+			/*
+			 * Closing the pipe stops its writer if the client gave up
+			 * reading the body part way.
+			 */
+			if (!sent) {
+				close(pipe.get());
+			}
+		}
+		
+		final ScheduledFuture<?> abort;
+		
+		if (deadline != null) {
+			abort = DeadlineTimer.schedule(new Runnable() {
+				public void run() {
+					close(response);
+				}
+			}, deadline);
+		}
+		else {
+			abort = null;
+		}
+		
+		return new Response() {
+			public int getStatusCode() {
+				return response.statusCode();
+			}
+			public String getHeader(String name) {
+				return response.headers().firstValue(name).orElse(null);
+			}
+			public InputStream getBody() {
+				return response.body();
+			}
+			public void release() {
+				
+				if (abort != null) {
+					abort.cancel(false);
+				}
+				
+				close(pipe.get());
+				
+				close(response);
+			}
+		};
+	}
+	
+	/**
+	 * Starts writing <code>body</code> on another thread, returning the
+	 * stream it can be read from. A failure to write it fails the read; one
+	 * to marshal it is also kept in <code>unmarshallable</code>, so it can
+	 * be thrown in place of the client's I/O error.
+	 */
+	private static InputStream pipe(final Body body, final AtomicReference<RequestMarshalException> unmarshallable) {
+		
+		final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+		
+		final PipedInputStream in = new PipedInputStream(64 * 1024) {
+			public synchronized int read(byte[] b, int off, int len) throws IOException {
+				
+				int n = super.read(b, off, len);
+				
+				if (n == -1 && failure.get() != null) {
+					throw failure.get();
+				}
+				
+				return n;
+			}
+		};
+		
+		final PipedOutputStream out;
+		try {
+			out = new PipedOutputStream(in);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		
+		WRITERS.execute(new Runnable() {
+			public void run() {
+				try {
+					body.writeRequest(out);
+				}
+				catch (IOException ex) {
+					failure.set(ex);
+				}
+				catch (RequestMarshalException ex) {
+					unmarshallable.set(ex);
+					failure.set(new IOException(ex));
+				}
+				catch (RuntimeException ex) {
+					failure.set(new IOException(ex));
+				}
+				finally {
+					try {
+						out.close();
+					}
+					catch (IOException ex) {
+						// the reader has gone
+					}
+				}
+			}
+		});
+		
+		return in;
+	}
+	
+	private static void close(InputStream in) {
+		
+		if (in == null) {
+			return;
+		}
+		
+		try {
+			in.close();
+		}
+		catch (IOException ex) {
+			// nothing more to release
+		}
+	}
+	
+	private static void close(HttpResponse<InputStream> response) {
+		try {
+			response.body().close();
+		}
+		catch (IOException ex) {
+			// the connection is discarded
+		}
+	}
+}
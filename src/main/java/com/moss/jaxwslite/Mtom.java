@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+/**
+ * MTOM settings for an endpoint. When enabled, requests are sent as XOP
+ * packages (<code>multipart/related</code>): binary content of at least
+ * <code>threshold</code> bytes, and every <code>DataHandler</code>, travels
+ * as a raw MIME part referenced from the envelope instead of inline as
+ * base64 text. Smaller binary content stays inline.
+ * <p>
+ * MTOM responses are understood whatever the setting, since it is the
+ * server that decides how to reply.
+ */
+public class Mtom {
+	
+	/** Requests carry their binary content inline. */
+	public static final Mtom NONE = new Mtom(-1);
+	
+	/** Requests send binary content of 1KB or more as attachments. */
+	public static final Mtom ENABLED = new Mtom(1024);
+	
+	private final int threshold;
+	
+	/**
+	 * @param threshold the smallest binary content, in bytes, sent as an
+	 * attachment; negative to send none
+	 */
+	public Mtom(int threshold) {
+		this.threshold = threshold;
+	}
+	
+	public int threshold() {
+		return threshold;
+	}
+	
+	public boolean isEnabled() {
+		return threshold >= 0;
+	}
+}
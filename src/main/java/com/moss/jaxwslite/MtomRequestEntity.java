@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.activation.DataHandler;
+import javax.xml.bind.attachment.AttachmentMarshaller;
+
+/**
+ * Request entity that sends the SOAP envelope as an XOP package. The
+ * envelope is marshalled onto the connection as the root MIME part with
+ * its binary content replaced by <code>xop:Include</code> references, and
+ * the binary content follows as raw parts: byte arrays are written as they
+ * are and <code>DataHandler</code>s are copied from their data sources, so
+ * no base64 text or second copy of the content is ever built.
+ * <p>
+ * Like {@link SoapRequestEntity} the length isn't known up front. Once a
+ * <code>DataHandler</code> has been marshalled the entity is no longer
+ * repeatable, since its data source may be a stream that can only be read
+ * once.
+ */
+public class MtomRequestEntity implements Transport.Body {
+	
+	static final String ROOT_ID = "root.message@jaxws-lite";
+	
+	private static final byte[] CRLF = { '\r', '\n' };
+	
+	private final ServiceType type;
+	private final ServiceType.InvocationPlan plan;
+	private final Object[] args;
+	private final int threshold;
+	private final boolean measured;
+	private final String id = UUID.randomUUID().toString();
+	private final String boundary = "uuid:" + id;
+	private byte[] root;
+	private Attachments rootAttachments;
+	private long marshalNanos;
+	private long bytesWritten;
+	private int attachments;
+	private volatile boolean dataHandlers;
+	
+	/**
+	 * @param threshold the smallest byte array sent as an attachment;
+	 * smaller ones stay inline
+	 * @param measured whether to record {@link #marshalNanos()} and
+	 * {@link #bytesWritten()} for the last write
+	 */
+	public MtomRequestEntity(ServiceType type, Method method, Object[] args, int threshold, boolean measured) {
+		this(type, type.plan(method), args, threshold, measured);
+	}
+	
+	public MtomRequestEntity(ServiceType type, ServiceType.InvocationPlan plan, Object[] args, int threshold, boolean measured) {
+		this.type = type;
+		this.plan = plan;
+		this.args = args;
+		this.threshold = threshold;
+		this.measured = measured;
+	}
+	
+	/**
+	 * Marshals the root part up front and keeps it, so it can be logged;
+	 * attachments are still written from their sources.
+	 */
+	public synchronized byte[] root() throws IOException {
+		
+		if (root == null) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Attachments attachments = new Attachments();
+			marshal(out, attachments);
+			root = out.toByteArray();
+			rootAttachments = attachments;
+		}
+		
+		return root;
+	}
+	
+	public boolean isRepeatable() {
+		return !dataHandlers;
+	}
+	
+	public void writeRequest(OutputStream stream) throws IOException {
+		
+		long start = measured ? System.nanoTime() : 0;
+		CountingOutputStream counter = null;
+		OutputStream out = stream;
+		
+		if (measured) {
+			out = counter = new CountingOutputStream(stream);
+		}
+		
+		write(out, "--" + boundary + "\r\n" +
+			"Content-Type: application/xop+xml; charset=UTF-8; type=\"text/xml\"\r\n" +
+			"Content-Transfer-Encoding: binary\r\n" +
+			"Content-ID: <" + ROOT_ID + ">\r\n" +
+			"\r\n");
+		
+		byte[] root;
+		Attachments attachments;
+		
+		synchronized (this) {
+			root = this.root;
+			attachments = rootAttachments;
+		}
+		
+		if (attachments != null) {
+			out.write(root);
+		}
+		else {
+			attachments = new Attachments();
+			marshal(out, attachments);
+		}
+		
+		if (measured) {
+			marshalNanos = System.nanoTime() - start;
+		}
+		
+		for (Attachment attachment : attachments.parts) {
+			
+			out.write(CRLF);
+			write(out, "--" + boundary + "\r\n" +
+				"Content-Type: " + attachment.contentType + "\r\n" +
+				"Content-Transfer-Encoding: binary\r\n" +
+				"Content-ID: <" + attachment.contentId + ">\r\n" +
+				"\r\n");
+			
+			if (attachment.data != null) {
+				out.write(attachment.data, attachment.offset, attachment.length);
+			}
+			else {
+				attachment.dataHandler.writeTo(out);
+			}
+		}
+		
+		out.write(CRLF);
+		write(out, "--" + boundary + "--\r\n");
+		out.flush();
+		
+		this.attachments = attachments.parts.size();
+		
+		if (measured) {
+			bytesWritten = counter.count();
+		}
+	}
+	
+	private void marshal(OutputStream out, Attachments attachments) throws IOException {
+		try {
+			type.request(plan, args, out, attachments);
+		}
+		catch (Exception ex) {
+			throw RequestMarshalException.writeFailure(plan.method().getName(), ex);
+		}
+	}
+	
+	private static void write(OutputStream out, String s) throws IOException {
+		out.write(s.getBytes(StandardCharsets.ISO_8859_1));
+	}
+	
+	/**
+	 * Time spent marshalling the root part the last time it was written, if
+	 * measured.
+	 */
+	public long marshalNanos() {
+		return marshalNanos;
+	}
+	
+	/**
+	 * Size of the whole package the last time it was written, if measured.
+	 */
+	public long bytesWritten() {
+		return bytesWritten;
+	}
+	
+	/**
+	 * How many attachments the package had the last time it was written.
+	 */
+	public int attachments() {
+		return attachments;
+	}
+	
+	public long getContentLength() {
+		return -1;
+	}
+	
+	public String getContentType() {
+		return "multipart/related; type=\"application/xop+xml\"; boundary=\"" + boundary + "\"; start=\"<" + ROOT_ID + ">\"; start-info=\"text/xml\"";
+	}
+	
+	private static class Attachment {
+		
+		final String contentId;
+		final String contentType;
+		final byte[] data;
+		final int offset;
+		final int length;
+		final DataHandler dataHandler;
+		
+		Attachment(String contentId, String contentType, byte[] data, int offset, int length, DataHandler dataHandler) {
+			this.contentId = contentId;
+			this.contentType = contentType;
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+			this.dataHandler = dataHandler;
+		}
+	}
+	
+	/**
+	 * Collects the binary content JAXB hands over while marshalling the
+	 * root part, to be written after it.
+	 */
+	private class Attachments extends AttachmentMarshaller {
+		
+		final List<Attachment> parts = new ArrayList<Attachment>();
+		
+		public boolean isXOPPackage() {
+			return true;
+		}
+		
+		public String addMtomAttachment(byte[] data, int offset, int length, String mimeType, String elementNamespace, String elementLocalName) {
+			
+			if (length < threshold) {
+				return null;
+			}
+			
+			return add(mimeType, data, offset, length, null);
+		}
+		
+		public String addMtomAttachment(DataHandler data, String elementNamespace, String elementLocalName) {
+			return add(data.getContentType(), null, 0, 0, data);
+		}
+		
+		public String addSwaRefAttachment(DataHandler data) {
+			return add(data.getContentType(), null, 0, 0, data);
+		}
+		
+		private String add(String contentType, byte[] data, int offset, int length, DataHandler dataHandler) {
+			
+			if (dataHandler != null) {
+				dataHandlers = true;
+			}
+			
+			String contentId = parts.size() + "." + id + "@jaxws-lite";
+			
+			if (contentType == null || contentType.length() == 0) {
+				contentType = "application/octet-stream";
+			}
+			
+			parts.add(new Attachment(contentId, contentType, data, offset, length, dataHandler));
+			
+			return "cid:" + contentId;
+		}
+	}
+}
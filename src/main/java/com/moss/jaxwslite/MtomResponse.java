@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.Cleaner;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.xml.bind.attachment.AttachmentUnmarshaller;
+
+/**
+ * An XOP package read from a <code>multipart/related</code> response: the
+ * root part holding the envelope, and the attachments it references, which
+ * JAXB resolves through this as an {@link AttachmentUnmarshaller}.
+ * <p>
+ * Attachments are copied from the connection as raw bytes, in memory up to
+ * {@link #SPILL_THRESHOLD} and into a temporary file beyond it, so that the
+ * connection can be released before the caller reads them. A temporary file
+ * is deleted once nothing refers to its <code>DataHandler</code> any more.
+ */
+class MtomResponse extends AttachmentUnmarshaller {
+	
+	static final int SPILL_THRESHOLD = 1024 * 1024;
+	
+	private static final Cleaner CLEANER = Cleaner.create();
+	
+	private final byte[] root;
+	private final Map<String, Part> parts;
+	
+	private MtomResponse(byte[] root, Map<String, Part> parts) {
+		this.root = root;
+		this.parts = parts;
+	}
+	
+	public static boolean isMultipart(String contentType) {
+		return contentType != null && contentType.trim().toLowerCase().startsWith("multipart/related");
+	}
+	
+	/**
+	 * Reads the whole package from <code>in</code>, which is not closed.
+	 */
+	public static MtomResponse read(String contentType, InputStream in) throws IOException {
+		
+		String boundary = MultipartReader.parameter(contentType, "boundary");
+		
+		if (boundary == null) {
+			throw new IOException("No boundary in multipart response Content-Type: " + contentType);
+		}
+		
+		String start = MultipartReader.parameter(contentType, "start");
+		if (start != null) {
+			start = contentId(start);
+		}
+		
+		MultipartReader reader = new MultipartReader(in, boundary);
+		byte[] root = null;
+		Map<String, Part> parts = new HashMap<String, Part>();
+		
+		while (reader.next()) {
+			
+			String contentId = reader.header("Content-ID");
+			contentId = contentId == null ? null : contentId(contentId);
+			
+			InputStream body = reader.body();
+			String transferEncoding = reader.header("Content-Transfer-Encoding");
+			
+			if (transferEncoding != null && transferEncoding.trim().equalsIgnoreCase("base64")) {
+				body = Base64.getMimeDecoder().wrap(body);
+			}
+			
+			if (root == null && (start == null || start.equals(contentId))) {
+				root = body.readAllBytes();
+			}
+			else if (contentId != null) {
+				parts.put(contentId, Part.read(reader.header("Content-Type"), body));
+			}
+		}
+		
+		if (root == null) {
+			throw new IOException("Multipart response has no root part" + (start == null ? "" : " <" + start + ">"));
+		}
+		
+		return new MtomResponse(root, parts);
+	}
+	
+	private static String contentId(String header) {
+		
+		String id = header.trim();
+		
+		if (id.startsWith("<") && id.endsWith(">")) {
+			id = id.substring(1, id.length() - 1);
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * The envelope, with <code>xop:Include</code> elements in place of its
+	 * binary content.
+	 */
+	public byte[] root() {
+		return root;
+	}
+	
+	public int attachments() {
+		return parts.size();
+	}
+	
+	public boolean isXOPPackage() {
+		return true;
+	}
+	
+	public DataHandler getAttachmentAsDataHandler(String cid) {
+		return new DataHandler(part(cid));
+	}
+	
+	public byte[] getAttachmentAsByteArray(String cid) {
+		try {
+			return part(cid).bytes();
+		}
+		catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	private Part part(String cid) {
+		
+		String id = cid.startsWith("cid:") ? cid.substring(4) : cid;
+		Part part = parts.get(id);
+		
+		if (part == null) {
+			try {
+				part = parts.get(URLDecoder.decode(id, "UTF-8"));
+			}
+			catch (UnsupportedEncodingException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		
+		if (part == null) {
+			throw new IllegalStateException("Response has no attachment " + cid);
+		}
+		
+		return part;
+	}
+	
+	/**
+	 * One attachment, held in memory or in a temporary file.
+	 */
+	private static class Part implements DataSource {
+		
+		private final String contentType;
+		private final byte[] content;
+		private final Path file;
+		
+		private Part(String contentType, byte[] content, Path file) {
+			this.contentType = contentType == null ? "application/octet-stream" : contentType;
+			this.content = content;
+			this.file = file;
+		}
+		
+		static Part read(String contentType, InputStream in) throws IOException {
+			
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8 * 1024];
+			int n;
+			
+			while ((n = in.read(chunk)) != -1) {
+				
+				buffer.write(chunk, 0, n);
+				
+				if (buffer.size() > SPILL_THRESHOLD) {
+					return spill(contentType, buffer, in);
+				}
+			}
+			
+			return new Part(contentType, buffer.toByteArray(), null);
+		}
+		
+		private static Part spill(String contentType, ByteArrayOutputStream buffer, InputStream in) throws IOException {
+			
+			final Path file = Files.createTempFile("jaxws-lite", ".part");
+			
+			try {
+				OutputStream out = Files.newOutputStream(file);
+				try {
+					buffer.writeTo(out);
+					in.transferTo(out);
+				}
+				finally {
+					out.close();
+				}
+			}
+			catch (IOException ex) {
+				Files.deleteIfExists(file);
+				throw ex;
+			}
+			
+			Part part = new Part(contentType, null, file);
+			
+			CLEANER.register(part, new Runnable() {
+				public void run() {
+					try {
+						Files.deleteIfExists(file);
+					}
+					catch (IOException ex) {
+						// left for the temp directory's own cleanup
+					}
+				}
+			});
+			
+			return part;
+		}
+		
+		/**
+		 * A copy of the content, since JAXB keeps the array it is given and
+		 * one response can be unmarshalled for several callers.
+		 */
+		byte[] bytes() throws IOException {
+			return content != null ? content.clone() : Files.readAllBytes(file);
+		}
+		
+		public InputStream getInputStream() throws IOException {
+			return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(file);
+		}
+		
+		public OutputStream getOutputStream() throws IOException {
+			throw new IOException("Attachments are read only");
+		}
+		
+		public String getContentType() {
+			return contentType;
+		}
+		
+		public String getName() {
+			return null;
+		}
+	}
+}
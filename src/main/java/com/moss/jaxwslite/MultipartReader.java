@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the parts of a MIME multipart body one after another from a
+ * stream, without buffering more than a few kilobytes of it. Each part's
+ * body is read through {@link #body()} up to the next boundary.
+ */
+class MultipartReader {
+	
+	private final InputStream in;
+	private final byte[] delimiter;
+	private final byte[] buffer;
+	private int pos;
+	private int limit;
+	private boolean eof;
+	private boolean inPart;
+	private boolean done;
+	private Map<String, String> headers;
+	
+	public MultipartReader(InputStream in, String boundary) {
+		this.in = in;
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		this.buffer = new byte[Math.max(8 * 1024, delimiter.length * 4)];
+		
+		/*
+		 * The first boundary has no line break before it; starting with one
+		 * lets it be found like the others, with the preamble read as a part
+		 * of its own that is skipped.
+		 */
+		buffer[0] = '\r';
+		buffer[1] = '\n';
+		limit = 2;
+		inPart = true;
+	}
+	
+	/**
+	 * Returns the value of parameter <code>name</code> in a header such as
+	 * <code>Content-Type</code>, or null if it has none.
+	 */
+	public static String parameter(String header, String name) {
+		
+		int i = header.indexOf(';');
+		
+		while (i != -1 && i < header.length()) {
+			
+			int eq = header.indexOf('=', i);
+			
+			if (eq == -1) {
+				return null;
+			}
+			
+			String key = header.substring(i + 1, eq).trim();
+			String value;
+			int end;
+			
+			if (eq + 1 < header.length() && header.charAt(eq + 1) == '"') {
+				end = header.indexOf('"', eq + 2);
+				if (end == -1) {
+					end = header.length();
+				}
+				value = header.substring(eq + 2, end);
+				end = header.indexOf(';', end);
+			}
+			else {
+				end = header.indexOf(';', eq);
+				value = header.substring(eq + 1, end == -1 ? header.length() : end).trim();
+			}
+			
+			if (key.equalsIgnoreCase(name)) {
+				return value;
+			}
+			
+			i = end;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Skips what is left of the current part and moves to the next one.
+	 * Returns false once past the last part.
+	 */
+	public boolean next() throws IOException {
+		
+		if (done) {
+			return false;
+		}
+		
+		byte[] skip = new byte[4 * 1024];
+		while (read(skip, 0, skip.length) != -1) {
+		}
+		
+		fill(2);
+		
+		if (limit - pos >= 2 && buffer[pos] == '-' && buffer[pos + 1] == '-') {
+			done = true;
+			return false;
+		}
+		
+		readLine();
+		
+		headers = new HashMap<String, String>();
+		String last = null;
+		
+		for (String line = readLine(); line.length() > 0; line = readLine()) {
+			
+			if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && last != null) {
+				headers.put(last, headers.get(last) + " " + line.trim());
+				continue;
+			}
+			
+			int colon = line.indexOf(':');
+			
+			if (colon > 0) {
+				last = line.substring(0, colon).trim().toLowerCase();
+				headers.put(last, line.substring(colon + 1).trim());
+			}
+		}
+		
+		inPart = true;
+		return true;
+	}
+	
+	/**
+	 * The current part's header named <code>name</code>, or null.
+	 */
+	public String header(String name) {
+		return headers == null ? null : headers.get(name.toLowerCase());
+	}
+	
+	/**
+	 * The current part's body, which ends at the next boundary. Closing it
+	 * has no effect.
+	 */
+	public InputStream body() {
+		return new InputStream() {
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return MultipartReader.this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+			}
+			public int read(byte[] b, int off, int len) throws IOException {
+				return MultipartReader.this.read(b, off, len);
+			}
+		};
+	}
+	
+	private int read(byte[] b, int off, int len) throws IOException {
+		
+		if (!inPart) {
+			return -1;
+		}
+		
+		if (len == 0) {
+			return 0;
+		}
+		
+		fill(delimiter.length);
+		
+		int found = indexOfDelimiter();
+		
+		if (found == pos) {
+			pos += delimiter.length;
+			inPart = false;
+			return -1;
+		}
+		
+		int available;
+		
+		if (found != -1) {
+			available = found - pos;
+		}
+		else if (eof) {
+			
+			if (limit == pos) {
+				throw new EOFException("Multipart body ended without its closing boundary");
+			}
+			
+			available = limit - pos;
+		}
+		else {
+			
+			/*
+			 * The end of the buffer might hold the start of a delimiter, so
+			 * it is kept back until more has been read.
+			 */
+			available = limit - pos - (delimiter.length - 1);
+		}
+		
+		int n = Math.min(len, available);
+		System.arraycopy(buffer, pos, b, off, n);
+		pos += n;
+		
+		return n;
+	}
+	
+	private int indexOfDelimiter() {
+		
+		byte first = delimiter[0];
+		int last = limit - delimiter.length;
+		
+		for (int i = pos; i <= last; i++) {
+			
+			if (buffer[i] != first) {
+				continue;
+			}
+			
+			int j = 1;
+			while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+				j++;
+			}
+			
+			if (j == delimiter.length) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private String readLine() throws IOException {
+		
+		StringBuilder line = new StringBuilder();
+		
+		while (true) {
+			
+			fill(1);
+			
+			if (pos == limit) {
+				throw new EOFException("Multipart body ended inside a part's headers");
+			}
+			
+			char c = (char)(buffer[pos++] & 0xff);
+			
+			if (c == '\n') {
+				break;
+			}
+			
+			if (c != '\r') {
+				line.append(c);
+			}
+		}
+		
+		return line.toString();
+	}
+	
+	/**
+	 * Reads until at least <code>n</code> bytes are buffered, or the
+	 * stream ends.
+	 */
+	private void fill(int n) throws IOException {
+		
+		if (limit - pos >= n || eof) {
+			return;
+		}
+		
+		if (pos > 0) {
+			System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		
+		while (limit < n || limit < buffer.length / 2) {
+			
+			int read = in.read(buffer, limit, buffer.length - limit);
+			
+			if (read == -1) {
+				eof = true;
+				return;
+			}
+			
+			limit += read;
+			
+			if (limit >= n && in.available() == 0) {
+				return;
+			}
+		}
+	}
+}
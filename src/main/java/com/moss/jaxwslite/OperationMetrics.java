@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregated {@link CallMetrics} for one operation on one endpoint.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+	
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	
+	private final String endpoint;
+	private final String operation;
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder faults = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder requestBytes = new LongAdder();
+	private final LongAdder responseBytes = new LongAdder();
+	private final LongAdder requestContentBytes = new LongAdder();
+	private final LongAdder responseContentBytes = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram marshal = new LatencyHistogram();
+	private final LatencyHistogram network = new LatencyHistogram();
+	private final LatencyHistogram unmarshal = new LatencyHistogram();
+	private final LatencyHistogram requestSize = new LatencyHistogram();
+	private final LatencyHistogram responseSize = new LatencyHistogram();
+	
+	public OperationMetrics(String endpoint, String operation) {
+		this.endpoint = endpoint;
+		this.operation = operation;
+	}
+	
+	void record(CallMetrics call) {
+		
+		calls.increment();
+		
+		if (call.outcome() == CallMetrics.Outcome.FAULT) {
+			faults.increment();
+		}
+		else if (call.outcome() == CallMetrics.Outcome.ERROR) {
+			errors.increment();
+		}
+		
+		latency.record(call.totalNanos());
+		marshal.record(call.marshalNanos());
+		network.record(call.networkNanos());
+		unmarshal.record(call.unmarshalNanos());
+		
+		requestBytes.add(call.requestBytes());
+		responseBytes.add(call.responseBytes());
+		requestContentBytes.add(call.requestContentBytes());
+		responseContentBytes.add(call.responseContentBytes());
+		requestSize.record(call.requestBytes());
+		responseSize.record(call.responseBytes());
+	}
+	
+	public String getEndpoint() {
+		return endpoint;
+	}
+	
+	public String getOperation() {
+		return operation;
+	}
+	
+	public long getCalls() {
+		return calls.sum();
+	}
+	
+	public long getFaults() {
+		return faults.sum();
+	}
+	
+	public long getErrors() {
+		return errors.sum();
+	}
+	
+	public double getLatencyMeanMillis() {
+		return latency.mean() / NANOS_PER_MILLI;
+	}
+	
+	public double getLatencyP50Millis() {
+		return latency.percentile(50) / NANOS_PER_MILLI;
+	}
+	
+	public double getLatencyP99Millis() {
+		return latency.percentile(99) / NANOS_PER_MILLI;
+	}
+	
+	public double getLatencyP999Millis() {
+		return latency.percentile(99.9) / NANOS_PER_MILLI;
+	}
+	
+	public double getLatencyMaxMillis() {
+		return latency.max() / NANOS_PER_MILLI;
+	}
+	
+	public double getMarshalP99Millis() {
+		return marshal.percentile(99) / NANOS_PER_MILLI;
+	}
+	
+	public double getNetworkP99Millis() {
+		return network.percentile(99) / NANOS_PER_MILLI;
+	}
+	
+	public double getUnmarshalP99Millis() {
+		return unmarshal.percentile(99) / NANOS_PER_MILLI;
+	}
+	
+	public long getRequestBytes() {
+		return requestBytes.sum();
+	}
+	
+	public long getResponseBytes() {
+		return responseBytes.sum();
+	}
+	
+	public double getRequestCompressionRatio() {
+		return ratio(requestContentBytes.sum(), requestBytes.sum());
+	}
+	
+	public double getResponseCompressionRatio() {
+		return ratio(responseContentBytes.sum(), responseBytes.sum());
+	}
+	
+	private static double ratio(long content, long wire) {
+		return wire == 0 ? 1.0 : (double)content / wire;
+	}
+	
+	/** Total call latency, in nanoseconds. */
+	public LatencyHistogram latency() {
+		return latency;
+	}
+	
+	public LatencyHistogram marshalLatency() {
+		return marshal;
+	}
+	
+	public LatencyHistogram networkLatency() {
+		return network;
+	}
+	
+	public LatencyHistogram unmarshalLatency() {
+		return unmarshal;
+	}
+	
+	/** Request body sizes, in bytes. */
+	public LatencyHistogram requestSizes() {
+		return requestSize;
+	}
+	
+	/** Response body sizes, in bytes. */
+	public LatencyHistogram responseSizes() {
+		return responseSize;
+	}
+	
+	public void reset() {
+		calls.reset();
+		faults.reset();
+		errors.reset();
+		requestBytes.reset();
+		responseBytes.reset();
+		requestContentBytes.reset();
+		responseContentBytes.reset();
+		latency.reset();
+		marshal.reset();
+		network.reset();
+		unmarshal.reset();
+		requestSize.reset();
+		responseSize.reset();
+	}
+}
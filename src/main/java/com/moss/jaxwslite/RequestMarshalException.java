@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a call's arguments can't be marshalled into a request.
+ * Marshalling is deterministic, so unlike an I/O error this is never
+ * retried, hedged or failed over; whatever part of the request was written
+ * is abandoned with its connection.
+ */
+public class RequestMarshalException extends RuntimeException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public RequestMarshalException(String message, Throwable cause) {
+		super(message, cause);
+	}
+	
+	/**
+	 * Sorts out a failure to write the request for <code>operation</code>.
+	 * JAXB reports the stream's I/O errors wrapped in its own exceptions;
+	 * such a failure is the connection's and is returned as an
+	 * <code>IOException</code> for the caller to throw. Any other failure is
+	 * the request's own and is thrown as a RequestMarshalException.
+	 */
+	static IOException writeFailure(String operation, Exception ex) {
+		
+		for (Throwable t = ex; t != null; t = t.getCause()) {
+			if (t instanceof IOException) {
+				return t == ex ? (IOException)ex : new IOException("Failed to write request for " + operation, ex);
+			}
+		}
+		
+		throw new RequestMarshalException("Failed to marshal request for " + operation, ex);
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of successful responses for idempotent operations, bounded by
+ * entry count and total bytes and evicted least-recently-used first.
+ * <p>
+ * Entries hold the raw response body rather than the unmarshalled result,
+ * so every hit returns a freshly unmarshalled object graph and callers can
+ * never see each other's modifications. The key is the endpoint, the
+ * operation and the marshalled request, so arguments that marshal the same
+ * share an entry.
+ * <p>
+ * Only methods with a time-to-live, given either by {@link Cached} or by
+ * {@link #setTtl}, are cached.
+ */
+public class ResponseCache {
+	
+	private static final long NOT_CACHED = -1;
+	
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<RequestKey, Entry> entries = new LinkedHashMap<RequestKey, Entry>(16, 0.75f, true);
+	private final ConcurrentMap<Method, Long> ttls = new ConcurrentHashMap<Method, Long>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private long bytes;
+	
+	public ResponseCache(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Caches responses of <code>method</code> for <code>ttl</code>, overriding
+	 * any {@link Cached} annotation. A ttl of zero turns caching off.
+	 */
+	public void setTtl(Method method, long ttl, TimeUnit unit) {
+		ttls.put(method, ttl > 0 ? unit.toNanos(ttl) : NOT_CACHED);
+	}
+	
+	/**
+	 * Returns the time-to-live for responses of <code>method</code> in
+	 * nanoseconds, or zero or less when it is not cached.
+	 */
+	public long ttlNanos(Method method) {
+		
+		Long ttl = ttls.get(method);
+		
+		if (ttl == null) {
+			Cached cached = method.getAnnotation(Cached.class);
+			ttl = cached == null || cached.ttl() <= 0 ? NOT_CACHED : cached.unit().toNanos(cached.ttl());
+			ttls.putIfAbsent(method, ttl);
+		}
+		
+		return ttl.longValue();
+	}
+	
+	public byte[] get(String url, Method method, byte[] request) {
+		
+		RequestKey key = new RequestKey(url, method, request);
+		
+		synchronized (entries) {
+			
+			Entry entry = entries.get(key);
+			
+			if (entry != null && entry.expires - System.nanoTime() > 0) {
+				hits.incrementAndGet();
+				return entry.response;
+			}
+			
+			if (entry != null) {
+				entries.remove(key);
+				bytes -= entry.size;
+			}
+		}
+		
+		misses.incrementAndGet();
+		return null;
+	}
+	
+	public void put(String url, Method method, byte[] request, byte[] response, long ttlNanos) {
+		
+		RequestKey key = new RequestKey(url, method, request);
+		Entry entry = new Entry(response, System.nanoTime() + ttlNanos, request.length + response.length);
+		
+		if (entry.size > maxBytes) {
+			return;
+		}
+		
+		synchronized (entries) {
+			
+			Entry previous = entries.put(key, entry);
+			
+			if (previous != null) {
+				bytes -= previous.size;
+			}
+			bytes += entry.size;
+			
+			Iterator<Map.Entry<RequestKey, Entry>> i = entries.entrySet().iterator();
+			while ((entries.size() > maxEntries || bytes > maxBytes) && i.hasNext()) {
+				Entry eldest = i.next().getValue();
+				i.remove();
+				bytes -= eldest.size;
+				evictions.incrementAndGet();
+			}
+		}
+	}
+	
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			bytes = 0;
+		}
+	}
+	
+	public long hits() {
+		return hits.get();
+	}
+	
+	public long misses() {
+		return misses.get();
+	}
+	
+	public long evictions() {
+		return evictions.get();
+	}
+	
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+	
+	public long bytes() {
+		synchronized (entries) {
+			return bytes;
+		}
+	}
+	
+	private static class Entry {
+		final byte[] response;
+		final long expires;
+		final long size;
+		
+		Entry(byte[] response, long expires, long size) {
+			this.response = response;
+			this.expires = expires;
+			this.size = size;
+		}
+	}
+}
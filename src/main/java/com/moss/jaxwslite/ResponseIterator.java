@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.Closeable;
+import java.lang.ref.Cleaner;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.attachment.AttachmentUnmarshaller;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The result of an operation declared to return an <code>Iterator</code> or
+ * <code>Stream</code>: the elements of the response wrapper's list,
+ * unmarshalled one at a time as they are asked for, straight from the
+ * response as it arrives.
+ * <p>
+ * The response holds on to its connection until the last element has been
+ * read or the iterator (or stream) is closed, so a caller that stops early
+ * should close it. One that is dropped unclosed gives back its connection
+ * once it has been garbage collected.
+ */
+public class ResponseIterator<T> implements Iterator<T>, Closeable {
+	
+	private static final Cleaner CLEANER = Cleaner.create();
+	
+	private final XMLStreamReader reader;
+	private final Class<T> elementType;
+	private final Resources resources;
+	private final Cleaner.Cleanable cleanable;
+	private T next;
+	private boolean done;
+	
+	/**
+	 * @param reader positioned inside the response wrapper, before its
+	 * first element
+	 * @param onClose what to run once the response has been read or
+	 * abandoned, given whether it was read to the end; or null
+	 */
+	ResponseIterator(XMLStreamReader reader, Class<T> elementType, InstancePool<Unmarshaller> unmarshallers, AttachmentUnmarshaller attachments, Consumer<Boolean> onClose) throws Exception {
+		
+		this.reader = reader;
+		this.elementType = elementType;
+		
+		Unmarshaller u = unmarshallers.acquire();
+		u.setAttachmentUnmarshaller(attachments);
+		
+		this.resources = new Resources(reader, u, unmarshallers, onClose);
+		this.cleanable = CLEANER.register(this, resources);
+	}
+	
+	public boolean hasNext() {
+		
+		if (next != null) {
+			return true;
+		}
+		
+		if (done) {
+			return false;
+		}
+		
+		try {
+			while (true) {
+				
+				int event = reader.getEventType();
+				
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					next = resources.unmarshaller.unmarshal(reader, elementType).getValue();
+					
+					if (next != null) {
+						return true;
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT || event == XMLStreamConstants.END_DOCUMENT) {
+					resources.exhausted = true;
+					close();
+					return false;
+				}
+				else {
+					reader.next();
+				}
+			}
+		}
+		catch (Exception ex) {
+			resources.failed = true;
+			close();
+			throw new RuntimeException("Failed to read the next " + elementType.getSimpleName() + " from the response", ex);
+		}
+	}
+	
+	public T next() {
+		
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		
+		T element = next;
+		next = null;
+		return element;
+	}
+	
+	/**
+	 * Stops reading and releases the response. Elements not yet read are
+	 * discarded along with the connection's remaining content.
+	 */
+	public void close() {
+		done = true;
+		next = null;
+		cleanable.clean();
+	}
+	
+	/**
+	 * The remaining elements as a sequential stream that closes this
+	 * iterator when it is closed.
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+			.onClose(this::close);
+	}
+	
+	/*
+	 * Kept apart from the iterator so the cleaner can run it once the
+	 * iterator is unreachable.
+	 */
+	private static class Resources implements Runnable {
+		
+		final XMLStreamReader reader;
+		final Unmarshaller unmarshaller;
+		final InstancePool<Unmarshaller> unmarshallers;
+		final Consumer<Boolean> onClose;
+		volatile boolean failed;
+		volatile boolean exhausted;
+		
+		Resources(XMLStreamReader reader, Unmarshaller unmarshaller, InstancePool<Unmarshaller> unmarshallers, Consumer<Boolean> onClose) {
+			this.reader = reader;
+			this.unmarshaller = unmarshaller;
+			this.unmarshallers = unmarshallers;
+			this.onClose = onClose;
+		}
+		
+		public void run() {
+			try {
+				reader.close();
+			}
+			catch (Exception ex) {
+				failed = true;
+			}
+			
+			if (!failed) {
+				unmarshaller.setAttachmentUnmarshaller(null);
+				unmarshallers.release(unmarshaller);
+			}
+			
+			if (onClose != null) {
+				onClose.accept(exhausted);
+			}
+		}
+	}
+}
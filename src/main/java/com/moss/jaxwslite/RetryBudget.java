@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+/**
+ * Caps hedges and retries to a fraction of calls, so that they cannot
+ * multiply the load on a backend that is already struggling. Each call
+ * deposits <code>ratio</code> tokens, up to <code>maxTokens</code>; each
+ * extra request withdraws one.
+ */
+public class RetryBudget {
+	
+	private final double ratio;
+	private final double maxTokens;
+	private double tokens;
+	
+	public RetryBudget(double ratio, int maxTokens) {
+		this.ratio = ratio;
+		this.maxTokens = maxTokens;
+		this.tokens = maxTokens;
+	}
+	
+	public synchronized void deposit() {
+		tokens = Math.min(maxTokens, tokens + ratio);
+	}
+	
+	/**
+	 * Takes a token for an extra request, if one is left.
+	 */
+	public synchronized boolean tryWithdraw() {
+		
+		if (tokens < 1) {
+			return false;
+		}
+		
+		tokens -= 1;
+		return true;
+	}
+	
+	public synchronized double tokens() {
+		return tokens;
+	}
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Makes one call for each of many items, such as argument tuples for one
+ * proxy or proxies for several shards (see
+ * {@link ServiceFactory#createEach}), with at most
+ * <code>parallelism</code> calls outstanding at a time. Results are returned
+ * in the order of the items, each holding either its value or its fault.
+ * <p>
+ * Calls run on virtual threads when the runtime has them (Java 21 and
+ * later), and otherwise on a shared pool of daemon threads. The caller's
+ * {@link Deadline} applies to every call.
+ */
+public class ScatterGather {
+	
+	/**
+	 * One call, typically a lambda or a method reference on a proxy.
+	 */
+	public interface Call<T, R> {
+		R call(T item) throws Exception;
+	}
+	
+	/**
+	 * The outcome of the call for one item.
+	 */
+	public static final class Result<R> {
+		
+		private final R value;
+		private final Throwable fault;
+		
+		private Result(R value, Throwable fault) {
+			this.value = value;
+			this.fault = fault;
+		}
+		
+		public boolean isSuccess() {
+			return fault == null;
+		}
+		
+		/**
+		 * True when the call was not made, or its outcome discarded, because
+		 * an earlier call failed fast.
+		 */
+		public boolean isCancelled() {
+			return fault instanceof CancellationException;
+		}
+		
+		/**
+		 * The value returned by the call, or null if it failed.
+		 */
+		public R value() {
+			return value;
+		}
+		
+		/**
+		 * The exception thrown by the call, or null if it succeeded.
+		 */
+		public Throwable fault() {
+			return fault;
+		}
+		
+		/**
+		 * Returns the value, or throws the fault.
+		 */
+		public R get() throws Exception {
+			
+			if (fault instanceof Exception) {
+				throw (Exception)fault;
+			}
+			else if (fault instanceof Error) {
+				throw (Error)fault;
+			}
+			
+			return value;
+		}
+		
+		public String toString() {
+			return isSuccess() ? "Result(" + value + ")" : "Result(" + fault + ")";
+		}
+	}
+	
+	private static final Log log = LogFactory.getLog(ScatterGather.class);
+	
+	private static Executor defaultExecutor;
+	
+	private static synchronized Executor defaultExecutor() {
+		
+		if (defaultExecutor == null) {
+			defaultExecutor = ThreadPools.newExecutor("jaxws-lite scatter");
+		}
+		
+		return defaultExecutor;
+	}
+	
+	private final int parallelism;
+	private final Executor executor;
+	
+	public ScatterGather(int parallelism) {
+		this(parallelism, null);
+	}
+	
+	/**
+	 * @param executor runs the calls; null for the default
+	 */
+	public ScatterGather(int parallelism, Executor executor) {
+		
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		
+		this.parallelism = parallelism;
+		this.executor = executor;
+	}
+	
+	public int parallelism() {
+		return parallelism;
+	}
+	
+	/**
+	 * Calls <code>call</code> for every item, blocking until all calls have
+	 * finished.
+	 */
+	public <T, R> List<Result<R>> invokeAll(Collection<? extends T> items, Call<? super T, ? extends R> call) {
+		return invokeAll(items, call, false);
+	}
+	
+	/**
+	 * Calls <code>call</code> for every item, blocking until all calls have
+	 * finished or, with <code>failFast</code>, until the first one fails.
+	 * Failing fast only skips the items not yet started: calls already
+	 * outstanding are not aborted, but run to completion in the background,
+	 * bounded by their deadline. Every call not finished by the time the
+	 * first one fails is reported as cancelled.
+	 */
+	public <T, R> List<Result<R>> invokeAll(Collection<? extends T> items, final Call<? super T, ? extends R> call, final boolean failFast) {
+		
+		final List<T> inputs = new ArrayList<T>(items);
+		final int count = inputs.size();
+		
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		
+		final AtomicReferenceArray<Result<R>> results = new AtomicReferenceArray<Result<R>>(count);
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger completed = new AtomicInteger();
+		final AtomicBoolean stopped = new AtomicBoolean();
+		final CountDownLatch settled = new CountDownLatch(1);
+		final Object lock = new Object();
+		final Deadline deadline = Deadline.current();
+		
+		/*
+		 * Each worker takes the next item until there are none left, so no
+		 * more than one call per worker is ever outstanding.
+		 */
+		Runnable worker = new Runnable() {
+			public void run() {
+				
+				Deadline.Scope scope = deadline == null ? null : deadline.enter();
+				
+				try {
+					int index;
+					
+					while (!stopped.get() && (index = next.getAndIncrement()) < count) {
+						
+						Result<R> result;
+						
+						try {
+							result = new Result<R>(call.call(inputs.get(index)), null);
+						}
+						catch (UndeclaredThrowableException ex) {
+							result = new Result<R>(null, ex.getUndeclaredThrowable());
+						}
+						catch (Throwable t) {
+							result = new Result<R>(null, t);
+						}
+						
+						/*
+						 * Outcomes are recorded under the lock, so none lands
+						 * after the results have been settled; those that
+						 * arrive later are reported as cancelled.
+						 */
+						synchronized (lock) {
+							
+							if (stopped.get()) {
+								break;
+							}
+							
+							results.set(index, result);
+							
+							if (failFast && !result.isSuccess()) {
+								
+								if (log.isDebugEnabled()) {
+									log.debug("Call " + (index + 1) + " of " + count + " failed, skipping the rest: " + result.fault());
+								}
+								
+								stopped.set(true);
+								settled.countDown();
+							}
+							else if (completed.incrementAndGet() == count) {
+								settled.countDown();
+							}
+						}
+					}
+				}
+				finally {
+					if (scope != null) {
+						scope.close();
+					}
+				}
+			}
+		};
+		
+		Executor executor = this.executor == null ? defaultExecutor() : this.executor;
+		
+		try {
+			for (int i = 0; i < Math.min(parallelism, count); i++) {
+				executor.execute(worker);
+			}
+			
+			settled.await();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+		finally {
+			/*
+			 * Interrupting the workers would not abort their calls, as the
+			 * transports' blocking I/O ignores interrupts; they just stop
+			 * taking items.
+			 */
+			synchronized (lock) {
+				stopped.set(true);
+			}
+		}
+		
+		List<Result<R>> gathered = new ArrayList<Result<R>>(count);
+		
+		for (int i = 0; i < count; i++) {
+			
+			Result<R> result = results.get(i);
+			
+			if (result == null) {
+				result = new Result<R>(null, new CancellationException("Cancelled after an earlier call failed"));
+			}
+			
+			gathered.add(result);
+		}
+		
+		return gathered;
+	}
+}
@@ -39,147 +39,671 @@ package com.moss.jaxwslite;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
-import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import com.moss.jaxbhelper.JAXBHelper;
-
 public class Service implements InvocationHandler {
 	
 	private final Log log = LogFactory.getLog(this.getClass());
 
-	private final HttpClient client;
+	private final Transport transport;
+	private final EndpointPool endpoints;
 	private final String url;
 	private final ServiceType type;
+	private final WireLog wireLog;
+	private final CallListeners listeners;
+	private final ResponseCache cache;
+	private final CallCoalescer coalescer;
+	private final Map<String, Compression> compression;
+	private final Map<String, Mtom> mtom;
+	private final HedgingPolicy hedging;
+	private final CallTimeouts timeouts;
+	private final ConcurrentMap<Method, Long> requestSizes = new ConcurrentHashMap<Method, Long>();
 	private final Object proxy;
 	
 	public Service(HttpClient client, String url, ServiceType type) {
+		this(new CommonsHttpTransport(client), EndpointPool.single(url, null), type, WireLog.defaultInstance(), new CallListeners(), new ResponseCache(0, 0), new CallCoalescer(), Compression.NONE, Mtom.NONE, null, new CallTimeouts());
+	}
+	
+	public Service(Transport transport, EndpointPool endpoints, ServiceType type, WireLog wireLog, CallListeners listeners, ResponseCache cache, CallCoalescer coalescer, Compression compression, Mtom mtom, HedgingPolicy hedging, CallTimeouts timeouts) {
+		this(transport, endpoints, type, wireLog, listeners, cache, coalescer, uniform(endpoints, compression), uniform(endpoints, mtom), hedging, timeouts);
+	}
+	
+	/**
+	 * @param compression the compression for each endpoint in the pool, by url
+	 * @param mtom the MTOM setting for each endpoint in the pool, by url
+	 */
+	public Service(Transport transport, EndpointPool endpoints, ServiceType type, WireLog wireLog, CallListeners listeners, ResponseCache cache, CallCoalescer coalescer, Map<String, Compression> compression, Map<String, Mtom> mtom, HedgingPolicy hedging, CallTimeouts timeouts) {
 		
-		if (url.endsWith("?wsdl")) {
-			
-			this.url = url.substring(0, url.length() - 5);
-			
-			if (log.isDebugEnabled()) {
-				log.debug("Excluding ?wsdl parameter from url: " + url + " -> " + this.url);
+		for (Endpoint endpoint : endpoints.endpoints()) {
+			if (!compression.containsKey(endpoint.url()) || !mtom.containsKey(endpoint.url())) {
+				throw new IllegalArgumentException("No compression or MTOM setting for " + endpoint.url());
 			}
 		}
-		else {
-			this.url = url;
-		}
 		
-		this.client = client;
+		this.endpoints = endpoints;
+		this.url = endpoints.name();
+		this.transport = transport;
 		this.type = type;
+		this.wireLog = wireLog;
+		this.listeners = listeners;
+		this.cache = cache;
+		this.coalescer = coalescer;
+		this.compression = new HashMap<String, Compression>(compression);
+		this.mtom = new HashMap<String, Mtom>(mtom);
+		this.hedging = hedging;
+		this.timeouts = timeouts;
 		
 		ClassLoader cl = this.getClass().getClassLoader();
 		Class[] interfaces = new Class[]{ type.iface() };
 		proxy = Proxy.newProxyInstance(cl, interfaces, this);
 	}
 	
+	private static <V> Map<String, V> uniform(EndpointPool endpoints, V value) {
+		
+		Map<String, V> values = new HashMap<String, V>();
+		
+		for (Endpoint endpoint : endpoints.endpoints()) {
+			values.put(endpoint.url(), value);
+		}
+		
+		return values;
+	}
+	
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
 		
 		if (args == null) {
 			args = new Object[0];
 		}
 		
-		if (method.getName().equals("toString") && args.length == 0) {
-			return url.toString();
+		if (method.getDeclaringClass() == Object.class) {
+			return invokeObjectMethod(proxy, method, args, url);
+		}
+		
+		Deadline deadline = timeouts.deadline(method);
+		
+		if (deadline != null && deadline.isExpired()) {
+			throw new DeadlineExceededException("Deadline expired before calling " + method.getName());
+		}
+		
+		ServiceType.InvocationPlan plan = type.plan(method);
+		long cacheTtl = cache.ttlNanos(method);
+		boolean coalesce = coalescer.isEnabled(method);
+		byte[] requestContent = null;
+		
+		if (cacheTtl > 0 || coalesce) {
+			requestContent = type.request(plan, args);
+		}
+		
+		if (cacheTtl > 0) {
+			byte[] cached = cache.get(url, method, requestContent);
+			
+			if (cached != null) {
+				return type.response(plan, new ByteArrayInputStream(cached), false, null, null);
+			}
+		}
+		
+		if (!coalesce) {
+			return call(plan, args, requestContent, cacheTtl, null, deadline);
+		}
+		
+		CallCoalescer.Flight flight = coalescer.join(url, method, requestContent);
+		
+		if (!flight.isLeader()) {
+			
+			CallCoalescer.Response shared = flight.await(deadline);
+			Object response = type.response(plan, new ByteArrayInputStream(shared.content()), shared.fault(), shared.attachments(), null);
+			
+			if (response instanceof Exception) {
+				throw (Exception)response;
+			}
+			return response;
+		}
+		
+		try {
+			return call(plan, args, requestContent, cacheTtl, flight, deadline);
+		}
+		catch (Throwable t) {
+			flight.fail(t);
+			throw t;
+		}
+	}
+	
+	private Object call(ServiceType.InvocationPlan plan, Object[] args, byte[] requestContent, long cacheTtl, CallCoalescer.Flight flight, Deadline deadline) throws Throwable {
+		
+		Method method = plan.method();
+		
+		/*
+		 * A streamed result keeps its connection after it is returned, so a
+		 * losing hedge's result couldn't simply be dropped; and a request
+		 * that may hold a DataHandler can't be sent twice.
+		 */
+		if (hedging == null || !hedging.isIdempotent(method) || plan.isStreamed() || !plan.isRepeatable()) {
+			return send(plan, args, requestContent, cacheTtl, flight, deadline);
+		}
+		
+		RetryBudget budget = hedging.budget();
+		budget.deposit();
+		
+		for (int retry = 0;; retry++) {
+			try {
+				return hedge(plan, args, requestContent, cacheTtl, flight, deadline, budget);
+			}
+			catch (IOException ex) {
+				
+				if (retry >= hedging.maxRetries()) {
+					throw ex;
+				}
+				
+				if (!budget.tryWithdraw()) {
+					hedging.denied();
+					throw ex;
+				}
+				
+				long backoff = hedging.backoffNanos(retry);
+				
+				if (deadline != null && backoff >= deadline.remainingNanos()) {
+					throw ex;
+				}
+				
+				hedging.retried();
+				
+				if (log.isDebugEnabled()) {
+					log.debug("Retrying " + method.getName() + " in " + TimeUnit.NANOSECONDS.toMillis(backoff) + "ms after: " + ex);
+				}
+				
+				try {
+					TimeUnit.NANOSECONDS.sleep(backoff);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw ex;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sends an idempotent call from the hedging executor, and a second copy
+	 * if the first has not been answered within the hedge delay. Returns or
+	 * throws the first response (result or fault); fails only when every
+	 * request failed without a response.
+	 */
+	private Object hedge(final ServiceType.InvocationPlan plan, final Object[] args, final byte[] requestContent, final long cacheTtl, final CallCoalescer.Flight flight, final Deadline deadline, RetryBudget budget) throws Throwable {
+		
+		final Method method = plan.method();
+		
+		long delay = hedging.hedgeDelayNanos(method);
+		
+		if (delay < 0) {
+			long start = System.nanoTime();
+			Object response = send(plan, args, requestContent, cacheTtl, flight, deadline);
+			hedging.record(method, System.nanoTime() - start);
+			return response;
+		}
+		
+		final CompletableFuture<Object> winner = new CompletableFuture<Object>();
+		final AtomicInteger pending = new AtomicInteger(1);
+		
+		class Attempt implements Runnable {
+			
+			private final boolean hedge;
+			
+			Attempt(boolean hedge) {
+				this.hedge = hedge;
+			}
+			
+			public void run() {
+				
+				long start = System.nanoTime();
+				
+				try {
+					Object response = send(plan, args, requestContent, cacheTtl, flight, deadline);
+					hedging.record(method, System.nanoTime() - start);
+					won(winner.complete(response));
+				}
+				catch (IOException | EndpointOverloadedException ex) {
+					if (pending.decrementAndGet() == 0) {
+						winner.completeExceptionally(ex);
+					}
+				}
+				catch (Throwable t) {
+					hedging.record(method, System.nanoTime() - start);
+					won(winner.completeExceptionally(t));
+				}
+			}
+			
+			private void won(boolean first) {
+				if (first && hedge) {
+					hedging.hedgeWon();
+				}
+			}
+		}
+		
+		hedging.executor().execute(new Attempt(false));
+		
+		try {
+			try {
+				return winner.get(deadline == null ? delay : Math.min(delay, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+			}
+			catch (TimeoutException ex) {
+				
+				if (deadline != null && deadline.isExpired()) {
+					throw new DeadlineExceededException("Deadline expired waiting for " + method.getName());
+				}
+				
+				if (budget.tryWithdraw()) {
+					pending.incrementAndGet();
+					hedging.hedged();
+					hedging.executor().execute(new Attempt(true));
+				}
+				else {
+					hedging.denied();
+				}
+				
+				if (deadline == null) {
+					return winner.get();
+				}
+				
+				return winner.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+			}
+		}
+		catch (TimeoutException ex) {
+			throw new DeadlineExceededException("Deadline expired waiting for " + method.getName());
+		}
+		catch (ExecutionException ex) {
+			throw ex.getCause();
 		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Sends the call to one of the endpoints, failing over to the others
+	 * while the request cannot be delivered: when no connection can be made,
+	 * or an endpoint's bulkhead is full.
+	 */
+	private Object send(ServiceType.InvocationPlan plan, Object[] args, byte[] requestContent, long cacheTtl, CallCoalescer.Flight flight, Deadline deadline) throws Throwable {
 		
-		PostMethod post = new PostMethod(url.toString());
+		Method method = plan.method();
 		
-		final byte[] requestContent = type.request(method, args);
+		List<Endpoint> tried = new ArrayList<Endpoint>(1);
+		Endpoint endpoint = endpoints.choose(tried);
 		
-		RequestEntity requestEntity = new ByteArrayRequestEntity(requestContent);
-		post.setRequestEntity(requestEntity);
-		post.addRequestHeader("Content-Type", "text/xml");
+		while (true) {
+			
+			if (deadline != null && deadline.isExpired()) {
+				throw new DeadlineExceededException("Deadline expired before sending " + method.getName());
+			}
+			
+			try {
+				return sendTo(endpoint, plan, args, requestContent, cacheTtl, flight, deadline);
+			}
+			catch (ConnectException ex) {
+				endpoints.eject(endpoint);
+				endpoint = failOver(plan, endpoint, tried, ex);
+			}
+			catch (EndpointOverloadedException ex) {
+				endpoint = failOver(plan, endpoint, tried, ex);
+			}
+		}
+	}
+	
+	private Endpoint failOver(ServiceType.InvocationPlan plan, Endpoint failed, List<Endpoint> tried, Exception cause) throws Exception {
+		
+		/*
+		 * The request may have been marshalled already, which reads a
+		 * DataHandler's source.
+		 */
+		if (!plan.isRepeatable()) {
+			throw cause;
+		}
+		
+		tried.add(failed);
+		Endpoint next = endpoints.choose(tried);
+		
+		if (next == null) {
+			throw cause;
+		}
 		
 		if (log.isDebugEnabled()) {
-        	new Thread(){
-        		public void run() {
-        			try {
-        				setPriority(MIN_PRIORITY);
-        				
-        				ByteArrayOutputStream out = new ByteArrayOutputStream();
-        				JAXBHelper.beautify(new ByteArrayInputStream(requestContent), out);
-        				
-        				StringBuilder sb = new StringBuilder();
-        				sb.append("Sending post: ").append(url).append("\n");
-        				sb.append(new String(out.toByteArray()));
-        				
-        				log.debug(sb.toString());
-        			} 
-        			catch (Exception e) {
-        				throw new RuntimeException(e);
-        			}
-        		}
-        	}.start();
+			log.debug("Failing over from " + failed.url() + " to " + next.url() + ": " + cause);
+		}
+		
+		return next;
+	}
+	
+	/**
+	 * Sends one request. When <code>flight</code> is given, the response body
+	 * is buffered and handed to the callers coalesced onto this one before it
+	 * is unmarshalled.
+	 */
+	private Object sendTo(Endpoint endpoint, ServiceType.InvocationPlan plan, Object[] args, byte[] requestContent, long cacheTtl, CallCoalescer.Flight flight, Deadline deadline) throws Throwable {
+		
+		Method method = plan.method();
+		String url = endpoint.url();
+		ConcurrencyLimiter limiter = endpoint.limiter();
+		Compression compression = this.compression.get(url);
+		Mtom mtom = this.mtom.get(url);
+		
+		boolean measured = !listeners.isEmpty();
+		long start = measured ? System.nanoTime() : 0;
+		long marshalNanos = 0;
+		long networkNanos = 0;
+		long unmarshalNanos = 0;
+		long requestBytes = 0;
+		long requestContentBytes = 0;
+		CountingInputStream responseCounter = null;
+		CountingInputStream responseContentCounter = null;
+		CallMetrics.Outcome outcome = CallMetrics.Outcome.ERROR;
+		
+		Transport.Body requestEntity;
+		SoapRequestEntity soapEntity = null;
+		MtomRequestEntity mtomEntity = null;
+		boolean logWire = wireLog.sample(log, method.getName());
+		
+		if (requestContent == null && mtom.isEnabled()) {
+			
+			mtomEntity = new MtomRequestEntity(type, plan, args, mtom.threshold(), measured);
+			requestEntity = mtomEntity;
+			
+			if (logWire) {
+				wireLog.log(log, "Sending post: " + url, mtomEntity.root());
+			}
+		}
+		else if (logWire || requestContent != null) {
+			
+			if (requestContent == null) {
+				requestContent = type.request(plan, args);
+			}
+			
+			if (logWire) {
+				wireLog.log(log, "Sending post: " + url, requestContent);
+			}
+			
+			requestEntity = new BytesRequestEntity(requestContent, "text/xml");
+			
+			if (measured) {
+				marshalNanos = System.nanoTime() - start;
+				requestBytes = requestContentBytes = requestContent.length;
+			}
+		}
+		else {
+			soapEntity = new SoapRequestEntity(type, plan, args, measured || compression.compressesRequests());
+			requestEntity = soapEntity;
+		}
+		
+		Map<String, String> headers = new HashMap<String, String>(4);
+		GzipRequestEntity gzipEntity = null;
+		
+		if (compression.compressesRequests() && mtomEntity == null) {
+			
+			Long lastSize = requestSizes.get(method);
+			long size = requestContent != null ? requestContent.length : lastSize != null ? lastSize.longValue() : -1;
+			
+			if (compression.compressRequest(size)) {
+				requestEntity = gzipEntity = new GzipRequestEntity(requestEntity);
+				headers.put("Content-Encoding", "gzip");
+			}
 		}
 		
+		if (compression.acceptCompressed()) {
+			headers.put("Accept-Encoding", Compression.ACCEPT_ENCODING);
+		}
+		
+		Transport.Response post = null;
+		long acquired = 0;
+		boolean handedOff = false;
+		boolean unmarshallable = false;
+		
+		if (limiter != null) {
+			limiter.acquire(url);
+			acquired = System.nanoTime();
+		}
+		
+		endpoint.callStarted();
+		
 		try {
-
-			int responseCode = client.executeMethod(post);
-			boolean fault = responseCode != 200;
-
-			final byte[] responseContent;
-			{
-				InputStream in = post.getResponseBodyAsStream();
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				byte[] buffer = new byte[1024 * 10]; //10k buffer
-				for(int numRead = in.read(buffer); numRead!=-1; numRead = in.read(buffer)){
-					out.write(buffer, 0, numRead);
+			
+			long sent = measured ? System.nanoTime() : 0;
+			
+			post = transport.post(url, headers, requestEntity, deadline);
+			endpoint.reachable();
+			boolean fault = post.getStatusCode() != 200;
+			
+			long received = measured ? System.nanoTime() : 0;
+			
+			if (soapEntity != null && compression.compressesRequests()) {
+				requestSizes.put(method, soapEntity.bytesWritten());
+			}
+			
+			if (measured) {
+				networkNanos = received - sent;
+				
+				if (soapEntity != null) {
+					marshalNanos = soapEntity.marshalNanos();
+					networkNanos -= marshalNanos;
+					requestBytes = requestContentBytes = soapEntity.bytesWritten();
+				}
+				
+				if (mtomEntity != null) {
+					marshalNanos = mtomEntity.marshalNanos();
+					networkNanos -= marshalNanos;
+					requestBytes = requestContentBytes = mtomEntity.bytesWritten();
+				}
+				
+				if (gzipEntity != null) {
+					requestBytes = gzipEntity.bytesWritten();
 				}
-				responseContent = out.toByteArray();
 			}
 
-			if (log.isDebugEnabled()) {
-				new Thread(){
-					public void run() {
-						try {
-							setPriority(MIN_PRIORITY);
-
-							ByteArrayOutputStream out = new ByteArrayOutputStream();
-							JAXBHelper.beautify(new ByteArrayInputStream(responseContent), out);
-
-							StringBuilder sb = new StringBuilder();
-							sb.append("Receiving post response: ").append(url).append("\n");
-							sb.append(new String(out.toByteArray()));
+			InputStream responseContent = post.getBody();
+			
+			if (measured) {
+				responseContent = responseCounter = new CountingInputStream(responseContent);
+			}
+			
+			String contentEncoding = post.getHeader("Content-Encoding");
+			
+			if (contentEncoding != null) {
+				responseContent = Compression.decode(contentEncoding, responseContent);
+				
+				if (measured) {
+					responseContent = responseContentCounter = new CountingInputStream(responseContent);
+				}
+			}
+			
+			String contentType = post.getHeader("Content-Type");
+			MtomResponse multipart = null;
+			
+			if (MtomResponse.isMultipart(contentType)) {
+				multipart = MtomResponse.read(contentType, responseContent);
+				responseContent = new ByteArrayInputStream(multipart.root());
+			}
+			
+			byte[] content = null;
+			
+			if (logWire || flight != null || (cacheTtl > 0 && !fault)) {
+				
+				if (multipart != null) {
+					content = multipart.root();
+				}
+				else {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					byte[] buffer = new byte[1024 * 10]; //10k buffer
+					for(int numRead = responseContent.read(buffer); numRead!=-1; numRead = responseContent.read(buffer)){
+						out.write(buffer, 0, numRead);
+					}
+					content = out.toByteArray();
+					responseContent = new ByteArrayInputStream(content);
+				}
+				
+				if (logWire) {
+					wireLog.log(log, "Receiving post response: " + url, content);
+				}
+			}
+			
+			if (flight != null) {
+				flight.complete(fault, content, multipart);
+			}
 
-							log.debug(sb.toString());
-						} 
-						catch (Exception e) {
-							throw new RuntimeException(e);
+			Object response;
+			
+			if (content == null && multipart == null && !fault && plan.isStreamed()) {
+				
+				/*
+				 * The result reads straight from the connection, so it takes
+				 * over releasing it once it is closed or exhausted.
+				 */
+				final Transport.Response exchange = post;
+				final long marshalled = marshalNanos;
+				final long network = networkNanos;
+				final long sentBytes = requestBytes;
+				final long sentContentBytes = requestContentBytes;
+				final CountingInputStream counter = responseCounter;
+				final CountingInputStream contentCounter = responseContentCounter;
+				
+				response = type.response(plan, responseContent, fault, multipart, new Consumer<Boolean>() {
+					public void accept(Boolean exhausted) {
+						
+						if (exhausted) {
+							exchange.release();
+						}
+						else {
+							exchange.abort();
+						}
+						
+						endpoint.callEnded();
+						
+						if (limiter != null) {
+							limiter.release();
+						}
+						
+						if (measured) {
+							long responseBytes = counter == null ? 0 : counter.count();
+							long responseContentBytes = contentCounter == null ? responseBytes : contentCounter.count();
+							long now = System.nanoTime();
+							listeners.fire(new CallMetrics(url, method.getName(), CallMetrics.Outcome.SUCCESS, marshalled, network, now - received, now - start, sentBytes, responseBytes, sentContentBytes, responseContentBytes));
 						}
 					}
-				}.start();
+				});
+				
+				/*
+				 * The limiter judges the endpoint by its latency up to here;
+				 * the caller's reading of the stream only holds the slot.
+				 */
+				if (limiter != null) {
+					limiter.record(System.nanoTime() - acquired, false);
+				}
+				
+				handedOff = true;
+			}
+			else {
+				response = type.response(plan, responseContent, fault, multipart, null);
+			}
+			
+			if (cacheTtl > 0 && !fault && multipart == null && !(response instanceof Exception)) {
+				cache.put(this.url, method, requestContent, content, cacheTtl);
+			}
+			
+			if (measured) {
+				unmarshalNanos = System.nanoTime() - received;
 			}
-
-			Object response = type.response(method, responseContent, fault);
 
 			if (response instanceof Exception) {
+				outcome = CallMetrics.Outcome.FAULT;
 				throw (Exception)response;
 			}
 			else {
+				outcome = CallMetrics.Outcome.SUCCESS;
 				return response;
 			}
 		}
+		catch (Exception ex) {
+			
+			unmarshallable = ex instanceof RequestMarshalException;
+			
+			if (outcome == CallMetrics.Outcome.ERROR && !unmarshallable && deadline != null && deadline.isExpired()) {
+				throw new DeadlineExceededException("Deadline expired calling " + method.getName() + " at " + url, ex);
+			}
+			
+			throw ex;
+		}
 		finally {
-			post.releaseConnection();
+			if (!handedOff) {
+				if (post != null) {
+					post.release();
+				}
+				
+				endpoint.callEnded();
+				
+				if (limiter != null) {
+					limiter.release(System.nanoTime() - acquired, post == null && !unmarshallable);
+				}
+				
+				if (measured) {
+					long responseBytes = responseCounter == null ? 0 : responseCounter.count();
+					long responseContentBytes = responseContentCounter == null ? responseBytes : responseContentCounter.count();
+					long totalNanos = System.nanoTime() - start;
+					listeners.fire(new CallMetrics(url, method.getName(), outcome, marshalNanos, networkNanos, unmarshalNanos, totalNanos, requestBytes, responseBytes, requestContentBytes, responseContentBytes));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Handles the <code>Object</code> methods a proxy forwards, without
+	 * sending anything to the server.
+	 */
+	static Object invokeObjectMethod(Object proxy, Method method, Object[] args, String url) {
+		
+		String name = method.getName();
+		
+		if (name.equals("equals")) {
+			return proxy == args[0];
+		}
+		else if (name.equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		}
+		else {
+			return url;
 		}
 	}
 	
+	/**
+	 * The endpoint url, or for a balanced proxy the comma separated urls of
+	 * its replicas.
+	 */
 	public String url() {
 		return url;
 	}
 	
+	public EndpointPool endpoints() {
+		return endpoints;
+	}
+	
 	public ServiceType type() {
 		return type;
 	}
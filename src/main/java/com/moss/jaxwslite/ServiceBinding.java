@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Binding for a service interface generated at build time by the
+ * jaxws-lite annotation processor, so that {@link ServiceType} needn't find
+ * the wrapper classes and their accessors by reflection. A binding for
+ * <code>com.example.Foo</code> is the class
+ * <code>com.example.Foo_Binding</code>; interfaces without one, and
+ * methods a binding leaves out, are bound by reflection as before.
+ */
+public abstract class ServiceBinding {
+	
+	public static final String SUFFIX = "_Binding";
+	
+	/**
+	 * Returns the generated binding for <code>iface</code>, or null if there
+	 * isn't one.
+	 */
+	public static ServiceBinding find(Class<?> iface) {
+		
+		Class<?> bindingClass;
+		try {
+			bindingClass = Class.forName(iface.getName() + SUFFIX, true, iface.getClassLoader());
+		}
+		catch (ClassNotFoundException ex) {
+			return null;
+		}
+		
+		try {
+			ServiceBinding binding = (ServiceBinding)bindingClass.getDeclaredConstructor().newInstance();
+			
+			if (binding.iface() != iface) {
+				throw new IllegalStateException(bindingClass.getName() + " binds " + binding.iface().getName() + ", not " + iface.getName());
+			}
+			
+			return binding;
+		}
+		catch (RuntimeException ex) {
+			throw ex;
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	public abstract Class<?> iface();
+	
+	public abstract Operation[] operations();
+	
+	/**
+	 * One interface method's wrappers and accessors.
+	 */
+	public static abstract class Operation {
+		
+		private final String name;
+		private final Class<?>[] parameterTypes;
+		private final Class<?> requestClass;
+		private final Class<?> responseClass;
+		private final Class<?> returnType;
+		private final Class<?>[] boundClasses;
+		
+		/**
+		 * @param returnType the type of the response wrapper's
+		 * <code>getReturn()</code>, or null if it has none
+		 * @param boundClasses the classes JAXB must bind for this method
+		 * besides its wrappers
+		 */
+		protected Operation(String name, Class<?>[] parameterTypes, Class<?> requestClass, Class<?> responseClass, Class<?> returnType, Class<?>[] boundClasses) {
+			this.name = name;
+			this.parameterTypes = parameterTypes;
+			this.requestClass = requestClass;
+			this.responseClass = responseClass;
+			this.returnType = returnType;
+			this.boundClasses = boundClasses;
+		}
+		
+		public String name() {
+			return name;
+		}
+		
+		public Class<?>[] parameterTypes() {
+			return parameterTypes.clone();
+		}
+		
+		public Class<?> requestClass() {
+			return requestClass;
+		}
+		
+		public Class<?> responseClass() {
+			return responseClass;
+		}
+		
+		public Class<?> returnType() {
+			return returnType;
+		}
+		
+		public Class<?>[] boundClasses() {
+			return boundClasses.clone();
+		}
+		
+		/**
+		 * Whether this operation binds <code>method</code>.
+		 */
+		public boolean binds(Method method) {
+			return name.equals(method.getName()) && Arrays.equals(parameterTypes, method.getParameterTypes());
+		}
+		
+		/**
+		 * Returns a request wrapper with its properties set from
+		 * <code>args</code>, in order.
+		 */
+		public abstract Object newRequest(Object[] args);
+		
+		/**
+		 * Returns the response wrapper's <code>getReturn()</code>, or null if
+		 * it has none.
+		 */
+		public abstract Object returnValue(Object response);
+		
+		/**
+		 * Returns the request wrapper's properties, in argument order.
+		 */
+		public abstract Object[] arguments(Object request);
+		
+		/**
+		 * Returns a response wrapper holding <code>value</code> as its
+		 * return property, if it has one.
+		 */
+		public abstract Object newResponse(Object value);
+		
+		/**
+		 * Returns the declared exception whose simple name is
+		 * <code>name</code>, or null if the method declares none such with a
+		 * message constructor.
+		 */
+		public abstract Throwable newException(String name, String message);
+	}
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves an implementation of a service interface, the server side of
+ * {@link Service}. Each request envelope is unmarshalled as it arrives
+ * and the implementation is called. Its result is marshalled straight onto
+ * the response. An exception the method declares becomes a SOAP fault
+ * whose detail clients rethrow it from; any other becomes a plain server
+ * fault.
+ * <p>
+ * An endpoint is an {@link HttpHandler} for the JDK's built-in http
+ * server; {@link #serve} starts one. That makes it a cheap in-process stub
+ * for tests as well as a small server.
+ */
+public class ServiceEndpoint implements HttpHandler {
+	
+	private static final String CONTENT_TYPE = "text/xml; charset=utf-8";
+	
+	private final Log log = LogFactory.getLog(this.getClass());
+	
+	private final ServiceType type;
+	private final Object implementation;
+	private final Map<Method, MethodHandle> handles;
+	private final Map<HttpServer, ExecutorService> servers = new ConcurrentHashMap<HttpServer, ExecutorService>();
+	
+	public ServiceEndpoint(ServiceType type, Object implementation) {
+		
+		if (!type.iface().isInstance(implementation)) {
+			throw new IllegalArgumentException(implementation.getClass().getName() + " does not implement " + type.iface().getName());
+		}
+		
+		this.type = type;
+		this.implementation = implementation;
+		this.handles = new HashMap<Method, MethodHandle>();
+		
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		
+		try {
+			for (Method method : type.iface().getMethods()) {
+				MethodHandle handle = lookup.unreflect(method)
+					.bindTo(implementation)
+					.asSpreader(Object[].class, method.getParameterTypes().length)
+					.asType(MethodType.methodType(Object.class, Object[].class));
+				handles.put(method, handle);
+			}
+		}
+		catch (IllegalAccessException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	public ServiceType type() {
+		return type;
+	}
+	
+	public Object implementation() {
+		return implementation;
+	}
+	
+	/**
+	 * Starts a server on <code>address</code> (port 0 for any free port)
+	 * with this endpoint at <code>path</code>. Requests run on virtual
+	 * threads where the runtime has them, otherwise on a pool of daemon
+	 * threads. Stop it with {@link #stop}, which also shuts down that
+	 * executor.
+	 */
+	public HttpServer serve(InetSocketAddress address, String path) throws IOException {
+		
+		HttpServer server = HttpServer.create(address, 0);
+		ExecutorService executor = ThreadPools.newExecutor("jaxws-lite endpoint");
+		server.createContext(path, this);
+		server.setExecutor(executor);
+		server.start();
+		servers.put(server, executor);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Serving " + type.iface().getName() + " at http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+		}
+		
+		return server;
+	}
+	
+	/**
+	 * Stops the servers started by {@link #serve}, waiting up to
+	 * <code>delay</code> seconds for the requests in progress, and shuts
+	 * down their executors.
+	 */
+	public void stop(int delay) {
+		for (Iterator<Map.Entry<HttpServer, ExecutorService>> i = servers.entrySet().iterator(); i.hasNext(); ) {
+			Map.Entry<HttpServer, ExecutorService> entry = i.next();
+			entry.getKey().stop(delay);
+			entry.getValue().shutdown();
+			i.remove();
+		}
+	}
+	
+	public void handle(HttpExchange exchange) throws IOException {
+		
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			
+			String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+			InputStream in = Compression.decode(exchange.getRequestHeaders().getFirst("Content-Encoding"), exchange.getRequestBody());
+			MtomResponse multipart = null;
+			
+			ServiceType.Invocation invocation;
+			
+			try {
+				if (MtomResponse.isMultipart(contentType)) {
+					multipart = MtomResponse.read(contentType, in);
+					in = new ByteArrayInputStream(multipart.root());
+				}
+				
+				invocation = type.readRequest(in, multipart);
+			}
+			catch (Exception ex) {
+				
+				if (log.isDebugEnabled()) {
+					log.debug("Unreadable request for " + type.iface().getName(), ex);
+				}
+				
+				fault(exchange, null, ex, true);
+				return;
+			}
+			
+			Object result;
+			
+			try {
+				result = (Object)handles.get(invocation.method()).invokeExact(invocation.arguments());
+			}
+			catch (Error ex) {
+				throw ex;
+			}
+			catch (Throwable t) {
+				
+				if (!declares(invocation.method(), t)) {
+					log.warn("Call to " + invocation.method().getName() + " failed", t);
+				}
+				
+				fault(exchange, invocation.method(), t, false);
+				return;
+			}
+			
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, 0);
+			type.writeResponse(invocation.plan(), result, exchange.getResponseBody());
+		}
+		catch (IOException ex) {
+			throw ex;
+		}
+		catch (Exception ex) {
+			
+			/*
+			 * Usually the client went away part way, such as by closing a
+			 * streamed result early; JAXB wraps the write failure.
+			 */
+			if (causedByIO(ex)) {
+				if (log.isDebugEnabled()) {
+					log.debug("Failed to answer a request for " + type.iface().getName() + ": " + ex);
+				}
+			}
+			else {
+				log.warn("Failed to answer a request for " + type.iface().getName(), ex);
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+	
+	private void fault(HttpExchange exchange, Method method, Throwable fault, boolean clientFault) throws Exception {
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		exchange.sendResponseHeaders(500, 0);
+		type.writeFault(method, fault, clientFault, exchange.getResponseBody());
+	}
+	
+	private static boolean causedByIO(Throwable t) {
+		for (; t != null; t = t.getCause()) {
+			if (t instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private boolean declares(Method method, Throwable t) {
+		for (Class<?> exceptionType : method.getExceptionTypes()) {
+			if (exceptionType.isInstance(t)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -37,11 +37,29 @@
  */
 package com.moss.jaxwslite;
 
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.namespace.QName;
 
@@ -86,17 +104,47 @@ public class ServiceFactory {
 		return defaultFactory.create(url, namespace, iface);
 	}
 
+	/**
+	 * commons-httpclient allows only 2 connections per host by default, which
+	 * queues concurrent calls to the same endpoint behind each other.
+	 */
+	private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
 	private final Log log = LogFactory.getLog(getClass());
 	private final HttpClient client;
-	private final Map<Class<?>, ServiceType> typesCache = new HashMap<Class<?>, ServiceType>();
-	private final Map<String, Service> servicesCache = new HashMap<String, Service>();
+	private volatile Transport transport;
+	private final ConcurrentMap<Class<?>, Future<ServiceType>> typesCache = new ConcurrentHashMap<Class<?>, Future<ServiceType>>();
+	private final ConcurrentMap<String, Service> servicesCache = new ConcurrentHashMap<String, Service>();
+	private final ConcurrentMap<String, AsyncService> asyncServicesCache = new ConcurrentHashMap<String, AsyncService>();
+	private int connectionTimeout;
+	private Executor asyncExecutor;
+	private volatile WireLog wireLog = WireLog.defaultInstance();
+	private final CallListeners listeners = new CallListeners();
+	private final ResponseCache responseCache = new ResponseCache(10000, 64 * 1024 * 1024);
+	private final CallCoalescer coalescer = new CallCoalescer();
+	private volatile Compression compression = Compression.RESPONSES;
+	private final ConcurrentMap<String, Compression> endpointCompression = new ConcurrentHashMap<String, Compression>();
+	private volatile Mtom mtom = Mtom.NONE;
+	private final ConcurrentMap<String, Mtom> endpointMtom = new ConcurrentHashMap<String, Mtom>();
+	private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<String, ConcurrencyLimiter>();
+	private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+	private volatile EndpointPool.Balancing balancing = EndpointPool.Balancing.POWER_OF_TWO_CHOICES;
+	private volatile long ejectionNanos = TimeUnit.SECONDS.toNanos(10);
+	private final CallTimeouts timeouts = new CallTimeouts();
+	private final JAXBContextPool contexts = new JAXBContextPool();
+	private volatile boolean lazyContexts;
+	private volatile boolean generatedBindings = true;
+	private volatile HedgingPolicy hedgingPolicy = new HedgingPolicy(95, 5, 100, TimeUnit.MILLISECONDS);
+	private java.net.http.HttpClient asyncClient;
 	
 	public ServiceFactory() {
 		
 		HttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
       	client = new HttpClient(connectionManager);
+      	transport = new CommonsHttpTransport(client);
       	
       	setConnectionTimeout(30000);
+      	setMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_HOST);
 	}
 	
 	public synchronized void setConnectionTimeout(int timeout) {
@@ -107,81 +155,704 @@ public class ServiceFactory {
 		p.setConnectionTimeout(timeout);
 		
 		manager.setParams(p);
+		
+		connectionTimeout = timeout;
+		asyncClient = null;
+	}
+	
+	/**
+	 * Sets how long the default commons-httpclient transport waits for data
+	 * on a socket before failing the call; 0 waits forever. Calls with a
+	 * deadline use the time left instead.
+	 */
+	public synchronized void setReadTimeout(int timeout) {
+		
+		HttpConnectionManager manager = client.getHttpConnectionManager();
+		HttpConnectionManagerParams p = manager.getParams();
+		
+		p.setSoTimeout(timeout);
+		
+		manager.setParams(p);
+	}
+	
+	/**
+	 * Bounds every call made through this factory's proxies, from connecting
+	 * to reading the last byte of the response, unless the operation has its
+	 * own timeout. 0 (the default) leaves calls bound only by the calling
+	 * thread's {@link Deadline}.
+	 */
+	public void setCallTimeout(long timeout, TimeUnit unit) {
+		timeouts.setDefault(timeout, unit);
+	}
+	
+	/**
+	 * Bounds calls of <code>iface.operation</code>; see
+	 * {@link #setCallTimeout(long, TimeUnit)}.
+	 */
+	public void setCallTimeout(Class<?> iface, String operation, long timeout, TimeUnit unit) {
+		for (Method method : iface.getMethods()) {
+			if (method.getName().equals(operation)) {
+				timeouts.set(method, timeout, unit);
+			}
+		}
+	}
+	
+	/**
+	 * Limits the connections the default commons-httpclient transport opens
+	 * to any one host. Defaults to 20.
+	 */
+	public synchronized void setMaxConnectionsPerHost(int max) {
+		
+		HttpConnectionManager manager = client.getHttpConnectionManager();
+		HttpConnectionManagerParams p = manager.getParams();
+		
+		p.setDefaultMaxConnectionsPerHost(max);
+		
+		if (p.getMaxTotalConnections() < max) {
+			p.setMaxTotalConnections(max);
+		}
+		
+		manager.setParams(p);
+	}
+	
+	/**
+	 * Sets the transport used by proxies created after this call. Defaults
+	 * to a {@link CommonsHttpTransport}; use a {@link JdkHttpTransport} for
+	 * HTTP/2.
+	 */
+	public void setTransport(Transport transport) {
+		this.transport = transport;
+	}
+	
+	public Transport transport() {
+		return transport;
+	}
+	
+	/**
+	 * Sets the executor that completes the futures returned by async proxies
+	 * (and therefore runs response unmarshalling). Only affects async proxies
+	 * created after this call.
+	 */
+	public synchronized void setAsyncExecutor(Executor executor) {
+		asyncExecutor = executor;
+		asyncClient = null;
+	}
+	
+	/**
+	 * Sets where proxies created after this call send their debug wire
+	 * logging. Defaults to {@link WireLog#defaultInstance()}.
+	 */
+	public void setWireLog(WireLog wireLog) {
+		this.wireLog = wireLog;
+	}
+	
+	public WireLog wireLog() {
+		return wireLog;
+	}
+	
+	/**
+	 * Sets the HTTP compression used by proxies created after this call,
+	 * unless their endpoint has its own setting. Defaults to
+	 * {@link Compression#RESPONSES}.
+	 */
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+	
+	/**
+	 * Sets the HTTP compression for one endpoint, overriding the factory
+	 * setting for proxies created after this call.
+	 */
+	public void setCompression(URL url, Compression compression) {
+		endpointCompression.put(url.toString(), compression);
+	}
+	
+	public Compression compression(URL url) {
+		Compression c = endpointCompression.get(url.toString());
+		return c != null ? c : compression;
+	}
+	
+	/**
+	 * Sets whether proxies created after this call send binary content as
+	 * MTOM attachments, unless their endpoint has its own setting. Defaults
+	 * to {@link Mtom#NONE}; MTOM responses are read either way.
+	 */
+	public void setMtom(Mtom mtom) {
+		this.mtom = mtom;
+	}
+	
+	/**
+	 * Sets MTOM for one endpoint, overriding the factory setting for proxies
+	 * created after this call.
+	 */
+	public void setMtom(URL url, Mtom mtom) {
+		endpointMtom.put(url.toString(), mtom);
+	}
+	
+	public Mtom mtom(URL url) {
+		Mtom m = endpointMtom.get(url.toString());
+		return m != null ? m : mtom;
+	}
+	
+	/**
+	 * Puts a bulkhead in front of one endpoint, or removes it if
+	 * <code>limiter</code> is null. It applies to every call to that
+	 * endpoint made after this, including calls through proxies that already
+	 * exist. Since every call in flight holds a connection, this also caps
+	 * the connections that endpoint can take from the shared pool.
+	 */
+	public void limitConcurrency(URL url, ConcurrencyLimiter limiter) {
+		
+		if (limiter == null) {
+			limiters.remove(url.toString());
+		}
+		else {
+			limiters.put(url.toString(), limiter);
+		}
+		
+		endpoint(url).setLimiter(limiter);
+	}
+	
+	/**
+	 * The limiter for <code>url</code>, or null if its calls are not limited.
+	 */
+	public ConcurrencyLimiter limiter(URL url) {
+		return limiters.get(url.toString());
+	}
+	
+	/**
+	 * The configured limiters by endpoint url, for monitoring their current
+	 * limits and calls in flight.
+	 */
+	public Map<String, ConcurrencyLimiter> limiters() {
+		return Collections.unmodifiableMap(limiters);
+	}
+	
+	/**
+	 * Sets how proxies created after this call pick among their replicas.
+	 * Defaults to {@link EndpointPool.Balancing#POWER_OF_TWO_CHOICES}.
+	 */
+	public void setLoadBalancing(EndpointPool.Balancing balancing) {
+		this.balancing = balancing;
+	}
+	
+	/**
+	 * Sets how long a replica that could not be connected to is skipped.
+	 * Defaults to 10 seconds.
+	 */
+	public void setEjectionTime(long time, TimeUnit unit) {
+		this.ejectionNanos = unit.toNanos(time);
 	}
 	
+	/**
+	 * Sets the hedging and retry policy for idempotent methods of proxies
+	 * created after this call. The default hedges at the 95th percentile
+	 * (at least 5ms, 100ms until enough calls were seen) and retries I/O
+	 * errors twice; use null to disable both.
+	 */
+	public void setHedgingPolicy(HedgingPolicy policy) {
+		this.hedgingPolicy = policy;
+	}
+	
+	public HedgingPolicy hedgingPolicy() {
+		return hedgingPolicy;
+	}
+	
+	/**
+	 * Marks <code>iface.operation</code> as idempotent, so that the hedging
+	 * policy applies to it. Only use this for operations that are safe to
+	 * send twice.
+	 */
+	public void hedgeCalls(Class<?> iface, String operation, boolean enable) {
+		for (Method method : iface.getMethods()) {
+			if (method.getName().equals(operation)) {
+				hedgingPolicy.setIdempotent(method, enable);
+			}
+		}
+	}
+	
+	private Endpoint endpoint(URL url) {
+		return endpoints.computeIfAbsent(url.toString(), u -> new Endpoint(u, limiters.get(u)));
+	}
+	
+	/**
+	 * Registers a listener for every call made through this factory's
+	 * proxies, including ones already created. See {@link ServiceMetrics}
+	 * for a ready-made aggregating listener.
+	 */
+	public void addCallListener(CallListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeCallListener(CallListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * The cache shared by this factory's proxies for methods marked
+	 * {@link Cached}, or configured with {@link #cacheResponses}.
+	 */
+	public ResponseCache responseCache() {
+		return responseCache;
+	}
+	
+	/**
+	 * Caches responses of <code>iface.operation</code> for <code>ttl</code>.
+	 * Only use this for operations without side effects.
+	 */
+	public void cacheResponses(Class<?> iface, String operation, long ttl, TimeUnit unit) {
+		for (Method method : iface.getMethods()) {
+			if (method.getName().equals(operation)) {
+				responseCache.setTtl(method, ttl, unit);
+			}
+		}
+	}
+	
+	/**
+	 * Collapses identical concurrent calls made through this factory's
+	 * proxies for methods marked {@link Coalesced}, or configured with
+	 * {@link #coalesceCalls}. Also reports how many calls were coalesced.
+	 */
+	public CallCoalescer coalescer() {
+		return coalescer;
+	}
+	
+	/**
+	 * Coalesces identical concurrent calls of <code>iface.operation</code>.
+	 * Only use this for operations without side effects.
+	 */
+	public void coalesceCalls(Class<?> iface, String operation, boolean enable) {
+		for (Method method : iface.getMethods()) {
+			if (method.getName().equals(operation)) {
+				coalescer.setEnabled(method, enable);
+			}
+		}
+	}
+	
+	public <T> T create(URL url, String namespace, Class<T> iface) {
+		return create(Collections.singletonList(url), namespace, iface);
+	}
+	
+	/**
+	 * Creates a proxy that balances its calls across the replicas at
+	 * <code>urls</code> (see {@link #setLoadBalancing}), failing over to
+	 * another replica when one cannot be reached. Replicas are shared by all
+	 * proxies of this factory, so outstanding calls and ejections are
+	 * counted across interfaces. Each call uses the compression and MTOM
+	 * settings of the replica it is sent to.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T create(List<URL> urls, String namespace, Class<T> iface) {
+		
+		StringBuilder name = new StringBuilder();
+		
+		for (URL url : urls) {
+			if (name.length() > 0) {
+				name.append(',');
+			}
+			name.append(url);
+		}
+		
+		final String key = name.append('#').append(iface.getName()).toString();
+		
+		Service service = servicesCache.get(key);
+		
+		if (service != null) {
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Re-using service resources: " + key + " -> proxy(" + service.proxy() + ")");
+			}
+			
+			return (T)service.proxy();
+		}
+		
+		List<Endpoint> replicas = new ArrayList<Endpoint>(urls.size());
+		final Map<String, Compression> compression = new HashMap<String, Compression>();
+		final Map<String, Mtom> mtom = new HashMap<String, Mtom>();
+		
+		for (URL url : urls) {
+			Endpoint endpoint = endpoint(url);
+			replicas.add(endpoint);
+			compression.put(endpoint.url(), compression(url));
+			mtom.put(endpoint.url(), mtom(url));
+		}
+		
+		final EndpointPool pool = new EndpointPool(replicas, balancing, ejectionNanos, TimeUnit.NANOSECONDS);
+		final ServiceType serviceType = serviceType(namespace, iface);
+		final Transport transport = this.transport;
+		final HedgingPolicy hedgingPolicy = this.hedgingPolicy;
+		
+		service = servicesCache.computeIfAbsent(key, k -> {
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Initializing service resources: " + k);
+			}
+			
+			return new Service(transport, pool, serviceType, wireLog, listeners, responseCache, coalescer, compression, mtom, hedgingPolicy, timeouts);
+		});
+		
+		return (T)service.proxy();
+	}
+	
+	/**
+	 * Creates one proxy per url, in order, for calls that must reach every
+	 * endpoint (shards, rather than replicas). See {@link ScatterGather}.
+	 */
+	public <T> List<T> createEach(List<URL> urls, String namespace, Class<T> iface) {
+		
+		List<T> proxies = new ArrayList<T>(urls.size());
+		
+		for (URL url : urls) {
+			proxies.add(create(url, namespace, iface));
+		}
+		
+		return proxies;
+	}
+	
+	/**
+	 * Creates a non-blocking proxy for <code>iface</code>. Every method of
+	 * <code>asyncIface</code> must have the same name and parameter types as a
+	 * method of <code>iface</code> and return a {@link java.util.concurrent.CompletableFuture}
+	 * of that method's return type; faults complete the future exceptionally.
+	 */
 	@SuppressWarnings("unchecked")
-	public synchronized <T> T create(URL url, String namespace, Class<T> iface) {
+	public <T, A> A createAsync(URL url, String namespace, Class<T> iface, Class<A> asyncIface) {
+		
+		final String key = url.toString() + "#" + asyncIface.getName();
+		
+		AsyncService service = asyncServicesCache.get(key);
+		
+		if (service != null) {
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Re-using async service resources: " + key);
+			}
+			
+			return (A)service.proxy();
+		}
+		
+		final ServiceType serviceType = serviceType(namespace, iface);
+		final java.net.http.HttpClient asyncClient = asyncClient();
+		final Compression compression = compression(url);
+		
+		service = asyncServicesCache.computeIfAbsent(key, k -> {
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Initializing async service resources: " + k);
+			}
+			
+			return new AsyncService(asyncClient, url.toString(), serviceType, asyncIface, wireLog, listeners, compression, timeouts);
+		});
+		
+		return (A)service.proxy();
+	}
+	
+	/**
+	 * Creates a server-side endpoint that answers calls on
+	 * <code>iface</code> with <code>implementation</code>. It shares its
+	 * service type, and so its JAXB context, with this factory's proxies.
+	 */
+	public <T> ServiceEndpoint createEndpoint(String namespace, Class<T> iface, T implementation) {
+		return new ServiceEndpoint(serviceType(namespace, iface), implementation);
+	}
+	
+	public void initType(String namespace, Class<?> iface) {
+		serviceType(namespace, iface);
+	}
+	
+	/**
+	 * Initializes the types for several interfaces in parallel, blocking
+	 * until all are ready. Interfaces that bind some of the same classes
+	 * share one JAXB context where the classes can be bound together.
+	 */
+	public void initTypes(final String namespace, Class<?>... ifaces) {
+		
+		int threads = Math.max(1, Math.min(ifaces.length, Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		
 		try {
-			String key = url.toString();
 			
-			Service service = servicesCache.get(key);
+			/*
+			 * Load every interface's classes first (leaving their contexts
+			 * unbuilt), so that overlapping interfaces can be found and given
+			 * one context before any of them builds its own.
+			 */
+			List<Future<ServiceType>> futures = new ArrayList<Future<ServiceType>>();
 			
-			if (service != null) {
+			for (final Class<?> iface : ifaces) {
 				
-				T proxy = (T)service.proxy();
+				FutureTask<ServiceType> task = new FutureTask<ServiceType>(new Callable<ServiceType>() {
+					public ServiceType call() throws Exception {
+						return new ServiceType(iface, namespace, binding(iface), contexts, true);
+					}
+				});
 				
-				if (log.isDebugEnabled()) {
-					log.debug("Re-using service resources: " + key + " -> proxy(" + proxy + ")");
-				}
+				Future<ServiceType> existing = typesCache.putIfAbsent(iface, task);
 				
-				return (T)service.proxy();
+				if (existing == null) {
+					executor.execute(task);
+					futures.add(task);
+				}
+				else {
+					futures.add(existing);
+				}
 			}
-			else {
-				
-				ServiceType serviceType = typesCache.get(iface);
-				
-				if (serviceType != null) {
-					
-					if (log.isDebugEnabled()) {
-						log.debug("Initializing service resources: " + key);
+			
+			List<ServiceType> types = new ArrayList<ServiceType>();
+			for (int i = 0; i < ifaces.length; i++) {
+				types.add(await(ifaces[i], futures.get(i)));
+			}
+			
+			List<Callable<Object>> builds = new ArrayList<Callable<Object>>();
+			
+			for (final Set<Class> shared : overlappingClasses(types)) {
+				builds.add(new Callable<Object>() {
+					public Object call() {
+						
+						long start = System.nanoTime();
+						boolean built = contexts.share(shared);
+						
+						if (built && log.isDebugEnabled()) {
+							log.debug("Built shared JAXB context for " + shared.size() + " classes in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+						}
+						
+						return built;
 					}
-					
-					service = new Service(client, key, serviceType);
-					servicesCache.put(key, service);
-					
-					return (T)service.proxy();
+				});
+			}
+			
+			executor.invokeAll(builds);
+			builds.clear();
+			
+			for (final ServiceType type : types) {
+				builds.add(new Callable<Object>() {
+					public Object call() {
+						return type.context();
+					}
+				});
+			}
+			
+			for (Future<Object> build : executor.invokeAll(builds)) {
+				build.get();
+			}
+			
+			if (log.isDebugEnabled()) {
+				for (ServiceType type : types) {
+					log.debug("Initialized service type " + type.iface().getName() + " in " + TimeUnit.NANOSECONDS.toMillis(type.initNanos()) + "ms");
 				}
-				else {
+				log.debug(ifaces.length + " service types share " + contexts.size() + " JAXB contexts");
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Groups the types that bind some of the same application classes,
+	 * either directly or through their method signatures, returning the
+	 * union of each group's bound classes. Classes of the JDK (String,
+	 * List, ...) do not make types overlap.
+	 */
+	private static List<Set<Class>> overlappingClasses(List<ServiceType> types) {
+		
+		List<Set<Class>> groups = new ArrayList<Set<Class>>();
+		List<Set<Class>> groupKeys = new ArrayList<Set<Class>>();
+		
+		for (ServiceType type : types) {
+			
+			if (type.isInitialized()) {
+				continue;
+			}
+			
+			Set<Class> merged = new HashSet<Class>(type.boundClasses());
+			Set<Class> keys = applicationClasses(type);
+			
+			for (int i = groups.size() - 1; i >= 0; i--) {
+				if (!Collections.disjoint(groupKeys.get(i), keys)) {
+					merged.addAll(groups.remove(i));
+					keys.addAll(groupKeys.remove(i));
+				}
+			}
+			
+			groups.add(merged);
+			groupKeys.add(keys);
+		}
+		
+		return groups;
+	}
+	
+	private static Set<Class> applicationClasses(ServiceType type) {
+		
+		Set<Class> classes = new HashSet<Class>(type.boundClasses());
+		
+		for (Method method : type.iface().getMethods()) {
+			classes.add(method.getReturnType());
+			classes.addAll(Arrays.asList(method.getParameterTypes()));
+		}
+		
+		Set<Class> application = new HashSet<Class>();
+		
+		for (Class c : classes) {
+			
+			while (c.isArray()) {
+				c = c.getComponentType();
+			}
+			
+			if (!c.isPrimitive() && c.getClassLoader() != null) {
+				application.add(c);
+			}
+		}
+		
+		return application;
+	}
+	
+	/**
+	 * Types built after this call get their JAXB context on first use instead
+	 * of when they are created, which shortens startup for interfaces that
+	 * are rarely called. Off by default.
+	 */
+	public void setLazyContexts(boolean lazy) {
+		this.lazyContexts = lazy;
+	}
+	
+	/**
+	 * Whether types built after this call use the bindings generated for
+	 * their interfaces by the jaxws-lite annotation processor, where there
+	 * are any. On by default; interfaces without a binding are always bound
+	 * by reflection.
+	 */
+	public void setGeneratedBindings(boolean enabled) {
+		this.generatedBindings = enabled;
+	}
+	
+	private ServiceBinding binding(Class<?> iface) {
+		
+		if (!generatedBindings) {
+			return null;
+		}
+		
+		ServiceBinding binding = ServiceBinding.find(iface);
+		
+		if (log.isDebugEnabled()) {
+			log.debug((binding == null ? "No generated binding for " : "Using generated binding for ") + iface.getName());
+		}
+		
+		return binding;
+	}
+	
+	/**
+	 * How long each initialized interface's type took to build, in
+	 * nanoseconds; see {@link ServiceType#initNanos()}.
+	 */
+	public Map<Class<?>, Long> initTimes() {
+		
+		Map<Class<?>, Long> times = new LinkedHashMap<Class<?>, Long>();
+		
+		for (Map.Entry<Class<?>, Future<ServiceType>> entry : typesCache.entrySet()) {
+			
+			Future<ServiceType> future = entry.getValue();
+			
+			if (future.isDone()) {
+				try {
+					times.put(entry.getKey(), future.get().initNanos());
+				}
+				catch (Exception ex) {
+					// failed types are evicted on their next lookup
+				}
+			}
+		}
+		
+		return times;
+	}
+	
+	/**
+	 * Returns the cached type for <code>iface</code>, building it on first
+	 * use. Lookups of types that are already built take no lock; a caller
+	 * that finds a type under construction waits only for that type.
+	 */
+	private ServiceType serviceType(final String namespace, final Class<?> iface) {
+		
+		Future<ServiceType> future = typesCache.get(iface);
+		
+		if (future == null) {
+			
+			FutureTask<ServiceType> task = new FutureTask<ServiceType>(new Callable<ServiceType>() {
+				public ServiceType call() throws Exception {
 					
 					if (log.isDebugEnabled()) {
 						log.debug("Initializing service type resources: " + iface.getName());
 					}
 					
-					serviceType = new ServiceType(iface, namespace);
-					typesCache.put(iface, serviceType);
+					ServiceType type = new ServiceType(iface, namespace, binding(iface), contexts, lazyContexts);
 					
-					if (log.isDebugEnabled()) {
-						log.debug("Initializing service resources: " + url);
+					if (log.isDebugEnabled() && type.isInitialized()) {
+						log.debug("Initialized service type " + iface.getName() + " in " + TimeUnit.NANOSECONDS.toMillis(type.initNanos()) + "ms");
 					}
 					
-					service = new Service(client, key, serviceType);
-					servicesCache.put(key, service);
-					
-					return (T)service.proxy();					
+					return type;
 				}
+			});
+			
+			future = typesCache.putIfAbsent(iface, task);
+			
+			if (future == null) {
+				future = task;
+				task.run();
 			}
 		}
-		catch (Exception ex) {
-			throw new RuntimeException(ex);
-		}
+		
+		return await(iface, future);
 	}
 	
-	public synchronized void initType(String namespace, Class<?> iface) {
+	/**
+	 * Waits for a type to be built, evicting it from the cache if it failed
+	 * so that the next lookup tries again.
+	 */
+	private ServiceType await(Class<?> iface, Future<ServiceType> future) {
 		try {
-			ServiceType serviceType = typesCache.get(iface);
-
-			if (serviceType == null) {
-
-				if (log.isDebugEnabled()) {
-					log.debug("Initializing service type resources: " + iface.getName());
-				}
-
-				serviceType = new ServiceType(iface, namespace);
-				typesCache.put(iface, serviceType);
+			return future.get();
+		}
+		catch (ExecutionException ex) {
+			typesCache.remove(iface, future);
+			
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
 			}
+			throw new RuntimeException(cause);
 		}
-		catch (Exception ex) {
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
 			throw new RuntimeException(ex);
 		}
 	}
+	
+	private synchronized java.net.http.HttpClient asyncClient() {
+		
+		if (asyncClient == null) {
+			
+			java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+				.connectTimeout(Duration.ofMillis(connectionTimeout));
+			
+			if (asyncExecutor != null) {
+				builder.executor(asyncExecutor);
+			}
+			
+			asyncClient = builder.build();
+		}
+		
+		return asyncClient;
+	}
 }
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link CallListener} that keeps an {@link OperationMetrics} per endpoint
+ * and operation. Register it with {@link ServiceFactory#addCallListener}; when
+ * constructed with a domain, each operation is also published to the
+ * platform MBean server as
+ * <code>&lt;domain&gt;:type=Operation,endpoint="...",operation=...</code>.
+ */
+public class ServiceMetrics implements CallListener {
+	
+	private final Log log = LogFactory.getLog(this.getClass());
+	
+	private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+	private final String jmxDomain;
+	
+	public ServiceMetrics() {
+		this(null);
+	}
+	
+	public ServiceMetrics(String jmxDomain) {
+		this.jmxDomain = jmxDomain;
+	}
+	
+	public void callCompleted(CallMetrics call) {
+		operation(call.url(), call.operation()).record(call);
+	}
+	
+	public OperationMetrics operation(String endpoint, String operation) {
+		
+		String key = endpoint + "#" + operation;
+		OperationMetrics metrics = operations.get(key);
+		
+		if (metrics == null) {
+			OperationMetrics created = new OperationMetrics(endpoint, operation);
+			metrics = operations.putIfAbsent(key, created);
+			
+			if (metrics == null) {
+				metrics = created;
+				register(created);
+			}
+		}
+		
+		return metrics;
+	}
+	
+	public Collection<OperationMetrics> operations() {
+		return new ArrayList<OperationMetrics>(operations.values());
+	}
+	
+	/**
+	 * Removes this instance's beans from the platform MBean server.
+	 */
+	public void unregister() {
+		
+		if (jmxDomain == null) {
+			return;
+		}
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		for (OperationMetrics metrics : operations.values()) {
+			try {
+				ObjectName name = objectName(metrics);
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+			}
+			catch (Exception ex) {
+				log.warn("Failed to unregister metrics for " + metrics.getOperation() + " at " + metrics.getEndpoint(), ex);
+			}
+		}
+	}
+	
+	private void register(OperationMetrics metrics) {
+		
+		if (jmxDomain == null) {
+			return;
+		}
+		
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName(metrics));
+		}
+		catch (Exception ex) {
+			log.warn("Failed to register metrics for " + metrics.getOperation() + " at " + metrics.getEndpoint(), ex);
+		}
+	}
+	
+	private ObjectName objectName(OperationMetrics metrics) throws Exception {
+		return new ObjectName(jmxDomain + ":type=Operation,endpoint=" + ObjectName.quote(metrics.getEndpoint()) + ",operation=" + ObjectName.quote(metrics.getOperation()));
+	}
+}
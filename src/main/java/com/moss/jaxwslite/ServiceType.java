@@ -37,155 +37,455 @@
  */
 package com.moss.jaxwslite;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.Reader;
-import java.io.StringReader;
-import java.lang.reflect.Constructor;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import javax.activation.DataHandler;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlType;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import javax.xml.bind.attachment.AttachmentMarshaller;
+import javax.xml.bind.attachment.AttachmentUnmarshaller;
 import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventFactory;
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
-import javax.xml.stream.events.Characters;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 public class ServiceType {
 	
+	/*
+	 * The envelope around the payload never changes (the payload declares
+	 * its own namespaces), so it is encoded once rather than written through
+	 * the StAX writer on every call.
+	 */
+	private static final String SOAP_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+	private static final byte[] ENVELOPE_START = utf8(
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+		"<soap:Envelope xmlns:soap=\"" + SOAP_NS + "\">" +
+		"<soap:Body>"
+	);
+	private static final byte[] ENVELOPE_END = utf8("</soap:Body></soap:Envelope>");
+	
+	private static final int POOL_CAPACITY = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	
 	private final Class<?> iface;
 	private final String namespace;
-	private final Map<Method, MethodInfo> methodInfo;
-	private final JAXBContext jaxbContext;
+	private final Map<Method, InvocationPlan> plans;
+	private final Map<String, InvocationPlan> plansByName;
+	private final Set<Class> classes;
+	private final int generatedPlans;
+	private final JAXBContextPool contexts;
+	private volatile JAXBContext jaxbContext;
+	private final long planNanos;
+	private volatile long contextNanos;
+	private final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+	private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	private final InstancePool<Marshaller> marshallers;
+	private final InstancePool<Unmarshaller> unmarshallers;
+	private final InstancePool<OutputBuffer> buffers;
 
 	public ServiceType(Class<?> iface, String namespace) throws Exception {
+		this(iface, namespace, null, false);
+	}
+	
+	/**
+	 * @param contexts where to get a shared JAXB context from, or null for
+	 * one of this type's own
+	 * @param lazy whether to build the JAXB context on first use rather than
+	 * now
+	 */
+	public ServiceType(Class<?> iface, String namespace, JAXBContextPool contexts, boolean lazy) throws Exception {
+		this(iface, namespace, null, contexts, lazy);
+	}
+	
+	/**
+	 * @param binding a generated binding for <code>iface</code>, or null to
+	 * bind every method by reflection
+	 */
+	public ServiceType(Class<?> iface, String namespace, ServiceBinding binding, JAXBContextPool contexts, boolean lazy) throws Exception {
 		
 		this.iface = iface;
 		this.namespace = namespace;
+		this.contexts = contexts;
+		
+		long start = System.nanoTime();
 		
 		try {
 			Set<Class> classes = new HashSet<Class>();
-			methodInfo = new HashMap<Method, MethodInfo>();
+			Map<Method, InvocationPlan> plans = new HashMap<Method, InvocationPlan>();
+			Map<String, InvocationPlan> plansByName = new LinkedHashMap<String, InvocationPlan>();
+			ServiceBinding.Operation[] operations = binding == null ? new ServiceBinding.Operation[0] : binding.operations();
+			int generated = 0;
 			
 			for (Method method : iface.getMethods()) {
 				
-				MethodInfo info = new MethodInfo(method);
-				methodInfo.put(method, info);
+				ServiceBinding.Operation operation = null;
+				for (ServiceBinding.Operation candidate : operations) {
+					if (candidate.binds(method)) {
+						operation = candidate;
+						break;
+					}
+				}
+				
+				InvocationPlan plan;
+				
+				if (operation != null) {
+					plan = new InvocationPlan(method, operation);
+					classes.addAll(Arrays.asList(operation.boundClasses()));
+					generated++;
+				}
+				else {
+					plan = new InvocationPlan(method);
+					classes.addAll(methodTypes(method));
+				}
+				
+				plans.put(method, plan);
+				plansByName.putIfAbsent(method.getName(), plan);
 				
-				classes.add(info.requestClass);
-				classes.add(info.responseClass);
-				classes.addAll(methodTypes(method));
+				classes.add(plan.requestClass);
+				classes.add(plan.responseClass);
 			}
 			
-			jaxbContext = JAXBContext.newInstance(classes.toArray(new Class[0]));
+			this.plans = Collections.unmodifiableMap(plans);
+			this.plansByName = Collections.unmodifiableMap(plansByName);
+			this.generatedPlans = generated;
+			this.classes = Collections.unmodifiableSet(classes);
+			
+			marshallers = new InstancePool<Marshaller>(POOL_CAPACITY, new Callable<Marshaller>() {
+				public Marshaller call() throws Exception {
+					Marshaller m = context().createMarshaller();
+					m.setProperty(Marshaller.JAXB_FRAGMENT, true);
+					return m;
+				}
+			});
+			
+			unmarshallers = new InstancePool<Unmarshaller>(POOL_CAPACITY, new Callable<Unmarshaller>() {
+				public Unmarshaller call() throws Exception {
+					return context().createUnmarshaller();
+				}
+			});
+			
+			buffers = new InstancePool<OutputBuffer>(POOL_CAPACITY, new Callable<OutputBuffer>() {
+				public OutputBuffer call() {
+					return new OutputBuffer();
+				}
+			});
 		}
 		catch (Exception ex) {
 			throw new RuntimeException(ex);
 		}
+		
+		planNanos = System.nanoTime() - start;
+		
+		if (!lazy) {
+			context();
+		}
+	}
+	
+	/**
+	 * The JAXB context for this type's classes, built on first use if it was
+	 * not built up front.
+	 */
+	public JAXBContext context() {
+		
+		JAXBContext context = jaxbContext;
+		
+		if (context == null) {
+			synchronized (this) {
+				
+				context = jaxbContext;
+				
+				if (context == null) {
+					
+					long start = System.nanoTime();
+					
+					try {
+						context = contexts != null ? contexts.get(classes) : JAXBContext.newInstance(classes.toArray(new Class[0]));
+					}
+					catch (Exception ex) {
+						throw new RuntimeException(ex);
+					}
+					
+					contextNanos = System.nanoTime() - start;
+					jaxbContext = context;
+				}
+			}
+		}
+		
+		return context;
+	}
+	
+	public boolean isInitialized() {
+		return jaxbContext != null;
+	}
+	
+	/**
+	 * Time spent initializing this type: loading its wrapper classes and
+	 * building its JAXB context (near zero when an existing context was
+	 * shared, and not yet counted while a lazy context is unbuilt).
+	 */
+	public long initNanos() {
+		return planNanos + contextNanos;
+	}
+	
+	/**
+	 * The classes this type binds with JAXB.
+	 */
+	public Set<Class> boundClasses() {
+		return classes;
+	}
+	
+	/**
+	 * How many of this type's methods are bound by a generated binding
+	 * rather than by reflection.
+	 */
+	public int generatedPlans() {
+		return generatedPlans;
 	}
 	
 	public Class<?> iface() {
 		return iface;
 	}
 	
+	public InstancePool<Marshaller> marshallers() {
+		return marshallers;
+	}
+	
+	public InstancePool<Unmarshaller> unmarshallers() {
+		return unmarshallers;
+	}
+	
+	/**
+	 * Marshals the request envelope into a byte array.
+	 * 
+	 * @throws RequestMarshalException if it can't be marshalled
+	 */
 	public byte[] request(Method method, Object[] args) throws Exception {
+		return request(plan(method), args);
+	}
+	
+	/**
+	 * As {@link #request(Method, Object[])}, for a plan already looked up.
+	 */
+	public byte[] request(InvocationPlan plan, Object[] args) throws Exception {
 		
-		JAXBElement element;
-		{
-			MethodInfo info = methodInfo.get(method);
-			Object wrapper = info.newRequest(args);
-			QName qname = new QName(namespace, method.getName());
-			element = new JAXBElement(qname, wrapper.getClass(), null, wrapper);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		try {
+			request(plan, args, out, null);
+		}
+		catch (Exception ex) {
+			throw RequestMarshalException.writeFailure(plan.method.getName(), ex);
 		}
 		
-		final String envelopeNs = "http://schemas.xmlsoap.org/soap/envelope/";
-		final String envelopePrefix = "soap";
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Marshals the request envelope for <code>method</code> directly onto
+	 * <code>stream</code> as UTF-8. The stream is flushed but not closed.
+	 */
+	public void request(Method method, Object[] args, OutputStream stream) throws Exception {
+		request(method, args, stream, null);
+	}
+	
+	/**
+	 * Marshals the request envelope, handing binary content to
+	 * <code>attachments</code> if given.
+	 */
+	public void request(Method method, Object[] args, OutputStream stream, AttachmentMarshaller attachments) throws Exception {
+		request(plan(method), args, stream, attachments);
+	}
+	
+	/**
+	 * As {@link #request(Method, Object[], OutputStream, AttachmentMarshaller)},
+	 * for a plan already looked up.
+	 */
+	public void request(InvocationPlan plan, Object[] args, OutputStream stream, AttachmentMarshaller attachments) throws Exception {
 		
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		XMLOutputFactory f = XMLOutputFactory.newInstance();
-		XMLEventWriter writer = f.createXMLEventWriter(out);
-		XMLEventFactory ef = XMLEventFactory.newInstance();
-		
-		writer.add(ef.createStartDocument("UTF-8", "1.0"));
-		writer.add(ef.createStartElement(envelopePrefix, envelopeNs, "Envelope"));
-		writer.add(ef.createNamespace(envelopePrefix, envelopeNs));
-		writer.add(ef.createStartElement(envelopePrefix, envelopeNs, "Body"));
-
-		Marshaller m = jaxbContext.createMarshaller();
-		m.setProperty(Marshaller.JAXB_FRAGMENT, true);
-		m.marshal(element, writer);
+		Object wrapper = plan.newRequest(args);
+		
+		write(new JAXBElement(plan.qname, plan.requestClass, null, wrapper), stream, attachments);
+	}
+	
+	private void write(JAXBElement element, OutputStream stream, AttachmentMarshaller attachments) throws Exception {
+		
+		OutputBuffer out = buffers.acquire().to(stream);
+		out.write(ENVELOPE_START);
 		
-		writer.add(ef.createEndElement(envelopePrefix, envelopeNs, "Body"));
-		writer.add(ef.createEndElement(envelopePrefix, envelopeNs, "Envelope"));
-		writer.add(ef.createEndDocument());
+		XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+		
+		Marshaller m = marshallers.acquire();
+		
+		if (attachments != null) {
+			m.setAttachmentMarshaller(attachments);
+			m.marshal(element, new XsiTypeStreamWriter(writer, namespace));
+			m.setAttachmentMarshaller(null);
+		}
+		else {
+			m.marshal(element, new XsiTypeStreamWriter(writer, namespace));
+		}
+		
+		marshallers.release(m);
+		
+		writer.flush();
 		writer.close();
 		
-		String results = new String(out.toByteArray(), "UTF8");
-		results = results.replaceAll("xsi:type=\"", "xsi:type=\"ns2:");
+		out.write(ENVELOPE_END);
+		out.flush();
 		
-		return results.getBytes("UTF8");
+		buffers.release(out.to(null));
 	}
 	
 	public Object response(Method method, byte[] responseContent, boolean fault) throws Exception {
+		return response(method, new ByteArrayInputStream(responseContent), fault);
+	}
+	
+	/**
+	 * Unmarshals the response envelope for <code>method</code> incrementally
+	 * from <code>in</code>. The stream is not closed.
+	 */
+	public Object response(Method method, InputStream in, boolean fault) throws Exception {
+		return response(method, in, fault, null);
+	}
+	
+	/**
+	 * Unmarshals the response envelope, resolving <code>xop:Include</code>
+	 * references through <code>attachments</code> if given.
+	 */
+	public Object response(Method method, InputStream in, boolean fault, AttachmentUnmarshaller attachments) throws Exception {
+		return response(method, in, fault, attachments, null);
+	}
+	
+	/**
+	 * Whether <code>method</code> is declared to return an
+	 * <code>Iterator</code> or <code>Stream</code>, whose elements are read
+	 * from the response as they are consumed.
+	 */
+	public boolean isStreamed(Method method) {
+		return plan(method).isStreamed();
+	}
+	
+	/**
+	 * Whether the request for <code>method</code> can be sent more than once
+	 * from the same arguments. It can't if it may hold a
+	 * <code>DataHandler</code>, whose data source may be a stream that can
+	 * only be read once.
+	 */
+	public boolean isRepeatable(Method method) {
+		return plan(method).isRepeatable();
+	}
+	
+	/**
+	 * The plan for calling <code>method</code>, which callers making many
+	 * calls can look up once and pass to the methods taking a plan.
+	 */
+	public InvocationPlan plan(Method method) {
 		
-		String results = new String(responseContent, "UTF8"); 
-		results = results.replaceAll("xsi:type=\"ns2:", "xsi:type=\"");
-		Reader r = new StringReader(results);
+		InvocationPlan plan = plans.get(method);
 		
-		MethodInfo info = methodInfo.get(method);
+		if (plan == null) {
+			throw new IllegalArgumentException(method + " is not a method of " + iface.getName());
+		}
+		
+		return plan;
+	}
+	
+	/**
+	 * As {@link #response(Method, InputStream, boolean, AttachmentUnmarshaller)}.
+	 * For a streamed method, the returned {@link ResponseIterator} (or its
+	 * stream) goes on reading from <code>in</code> after this returns, and
+	 * calls <code>onClose</code> when it is done with it, with whether it
+	 * read to the end. Otherwise <code>onClose</code> is not called.
+	 */
+	public Object response(Method method, InputStream in, boolean fault, AttachmentUnmarshaller attachments, Consumer<Boolean> onClose) throws Exception {
+		return response(plan(method), in, fault, attachments, onClose);
+	}
+	
+	/**
+	 * As {@link #response(Method, InputStream, boolean, AttachmentUnmarshaller, Consumer)},
+	 * for a plan already looked up.
+	 */
+	public Object response(InvocationPlan plan, InputStream in, boolean fault, AttachmentUnmarshaller attachments, Consumer<Boolean> onClose) throws Exception {
 		
-		XMLInputFactory f = XMLInputFactory.newInstance();
-		XMLEventReader reader = f.createXMLEventReader(r);
+		XMLStreamReader reader = new XsiTypeStreamReader(inputFactory.createXMLStreamReader(in), namespace);
 		Object response = null;
 		
+		if (!fault && plan.elementType != null) {
+			
+			while (reader.hasNext()) {
+				
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equalsIgnoreCase("body")) {
+					
+					reader.nextTag();
+					reader.next();
+					
+					ResponseIterator iterator = new ResponseIterator(reader, plan.elementType, unmarshallers, attachments, onClose);
+					return plan.stream ? iterator.stream() : iterator;
+				}
+			}
+			
+			reader.close();
+			throw new IllegalStateException("Response to " + plan.method.getName() + " has no body");
+		}
+		
 		if (!fault) {
 
 			while (reader.hasNext()) {
 
-				XMLEvent e = reader.nextEvent();
-
-				if (! (e instanceof StartElement)) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT) {
 					continue;
 				}
 
-				StartElement start = (StartElement)e;
-				String name = start.getName().getLocalPart().toLowerCase();
-
-				if (name.equals("body")) {
-					Unmarshaller u = jaxbContext.createUnmarshaller();
-					Object wrapper = u.unmarshal(reader, info.responseClass).getValue();
+				if (reader.getLocalName().equalsIgnoreCase("body")) {
+					reader.nextTag();
 					
-					if (info.responseGetter == null) {
-						response = null;
+					Unmarshaller u = unmarshallers.acquire();
+					Object wrapper;
+					
+					if (attachments != null) {
+						u.setAttachmentUnmarshaller(attachments);
+						wrapper = u.unmarshal(reader, plan.responseClass).getValue();
+						u.setAttachmentUnmarshaller(null);
 					}
 					else {
-						response = info.responseGetter.invoke(wrapper);
-						
-						if (response == null) {
-							Class t = info.responseGetter.getReturnType(); 
-							if (List.class.isAssignableFrom(t)) {
-								response = new ArrayList();
-							}
-							else if (Set.class.isAssignableFrom(t)) {
-								response = new HashSet();
-							}
-						}
+						wrapper = u.unmarshal(reader, plan.responseClass).getValue();
 					}
+					
+					unmarshallers.release(u);
+					
+					response = plan.returnValue(wrapper);
 					break;
 				}
 			}
@@ -194,72 +494,48 @@ public class ServiceType {
 			
 			while (reader.hasNext()) {
 			
-				XMLEvent e = reader.nextEvent();
-
-				if (! (e instanceof StartElement)) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT) {
 					continue;
 				}
 
-				StartElement start = (StartElement)e;
-				String name = start.getName().getLocalPart().toLowerCase();
-
-				if (name.equals("fault")) {
-
-					String currentElement = null;
+				if (reader.getLocalName().equalsIgnoreCase("fault")) {
 
 					String faultString = null;
-					Class<?> exceptionType = null;
+					String exceptionName = null;
 
 					while (true) {
-						e = reader.nextEvent();
+						int event = reader.next();
 
-						if (e instanceof StartElement) {
-							StartElement s = (StartElement)e;
-							currentElement = s.getName().getLocalPart();
+						if (event == XMLStreamConstants.START_ELEMENT) {
+							String currentElement = reader.getLocalName();
 
 							if (currentElement.equals("detail")) {
-								e = reader.nextTag();
-								String exceptionName = ((StartElement)e).getName().getLocalPart();
-								exceptionType = info.declaredExceptions.get(exceptionName);
-							}
-						}
-						else if (e instanceof Characters) {
-							Characters c = (Characters)e;
-							String data = c.getData();
-
-							if (currentElement.equals("faultstring")) {
-								faultString = data;
+								reader.nextTag();
+								exceptionName = reader.getLocalName();
 							}
-							else {
-								continue;
+							else if (currentElement.equals("faultstring")) {
+								faultString = reader.getElementText();
 							}
 						}
-						else if (e instanceof EndElement) {
-							EndElement end = (EndElement)e;
-							String endName = end.getName().getLocalPart().toLowerCase();
-							if (endName.equals("fault")) {
+						else if (event == XMLStreamConstants.END_ELEMENT) {
+							if (reader.getLocalName().equalsIgnoreCase("fault")) {
 								break;
 							}
-							else {
-								currentElement = null;
-								continue;
-							}
 						}
 					}
 					
-					if (exceptionType != null) {
-						Constructor c = exceptionType.getConstructor(new Class[]{ String.class });
-						response = c.newInstance(faultString);
-						break;
+					Object exception = exceptionName == null ? null : plan.newException(exceptionName, faultString);
+					
+					if (exception != null) {
+						response = exception;
+					}
+					else if (faultString != null) {
+						response = new RuntimeException(faultString.trim());
 					}
 					else {
-						if (faultString != null) {
-							response = new RuntimeException(faultString.trim());
-						}
-						else {
-							response = new RuntimeException("SOAP Fault received");
-						}
+						response = new RuntimeException("SOAP Fault received");
 					}
+					break;
 				}
 			}
 		}
@@ -276,6 +552,184 @@ public class ServiceType {
 		 */
 	}
 	
+	/**
+	 * Unmarshals a request envelope for one of this type's methods
+	 * incrementally from <code>in</code>, as a server would. The stream is
+	 * not closed.
+	 * 
+	 * @throws IllegalArgumentException if the request names no method of
+	 * this type
+	 */
+	public Invocation readRequest(InputStream in, AttachmentUnmarshaller attachments) throws Exception {
+		
+		XMLStreamReader reader = new XsiTypeStreamReader(inputFactory.createXMLStreamReader(in), namespace);
+		
+		try {
+			while (reader.hasNext()) {
+				
+				if (reader.next() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equalsIgnoreCase("body")) {
+					continue;
+				}
+				
+				reader.nextTag();
+				
+				InvocationPlan plan = plansByName.get(reader.getLocalName());
+				
+				if (plan == null) {
+					throw new IllegalArgumentException("No operation " + reader.getLocalName() + " on " + iface.getName());
+				}
+				
+				Unmarshaller u = unmarshallers.acquire();
+				Object wrapper;
+				
+				if (attachments != null) {
+					u.setAttachmentUnmarshaller(attachments);
+					wrapper = u.unmarshal(reader, plan.requestClass).getValue();
+					u.setAttachmentUnmarshaller(null);
+				}
+				else {
+					wrapper = u.unmarshal(reader, plan.requestClass).getValue();
+				}
+				
+				unmarshallers.release(u);
+				
+				return new Invocation(plan, plan.arguments(wrapper));
+			}
+			
+			throw new IllegalArgumentException("Request has no body");
+		}
+		finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Marshals the response envelope for <code>method</code> returning
+	 * <code>value</code>. The elements of an <code>Iterator</code> or
+	 * <code>Stream</code> are collected into the wrapper's list.
+	 */
+	public void writeResponse(Method method, Object value, OutputStream stream) throws Exception {
+		writeResponse(plan(method), value, stream);
+	}
+	
+	/**
+	 * As {@link #writeResponse(Method, Object, OutputStream)}, for a plan
+	 * already looked up.
+	 */
+	public void writeResponse(InvocationPlan plan, Object value, OutputStream stream) throws Exception {
+		
+		if (plan.elementType != null && value != null) {
+			
+			List<Object> elements = new ArrayList<Object>();
+			
+			if (value instanceof Stream) {
+				try (Stream<?> values = (Stream<?>)value) {
+					values.forEachOrdered(elements::add);
+				}
+			}
+			else {
+				for (Iterator<?> i = (Iterator<?>)value; i.hasNext(); ) {
+					elements.add(i.next());
+				}
+			}
+			
+			value = elements;
+		}
+		
+		write(new JAXBElement(plan.responseQName, plan.responseClass, null, plan.newResponse(value)), stream, null);
+	}
+	
+	/**
+	 * Writes a SOAP fault for <code>fault</code>. An exception declared by
+	 * <code>method</code> gets a detail element named after the declared
+	 * type, which is what clients rethrow it by.
+	 * 
+	 * @param method the method called, or null if the request couldn't be
+	 * read
+	 * @param clientFault whether the request, rather than the server, was at
+	 * fault
+	 */
+	public void writeFault(Method method, Throwable fault, boolean clientFault, OutputStream stream) throws Exception {
+		
+		String detail = null;
+		
+		if (method != null) {
+			for (Class<?> exceptionType : method.getExceptionTypes()) {
+				if (exceptionType.isInstance(fault)) {
+					detail = exceptionType.getSimpleName();
+					break;
+				}
+			}
+		}
+		
+		String message = fault.getMessage() == null ? fault.toString() : fault.getMessage();
+		
+		OutputBuffer out = buffers.acquire().to(stream);
+		out.write(ENVELOPE_START);
+		
+		XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+		
+		writer.writeStartElement("soap", "Fault", SOAP_NS);
+		
+		writer.writeStartElement("faultcode");
+		writer.writeCharacters(clientFault ? "soap:Client" : "soap:Server");
+		writer.writeEndElement();
+		
+		writer.writeStartElement("faultstring");
+		writer.writeCharacters(message);
+		writer.writeEndElement();
+		
+		if (detail != null) {
+			writer.writeStartElement("detail");
+			writer.writeStartElement("ns2", detail, namespace);
+			writer.writeNamespace("ns2", namespace);
+			writer.writeStartElement("message");
+			writer.writeCharacters(message);
+			writer.writeEndElement();
+			writer.writeEndElement();
+			writer.writeEndElement();
+		}
+		
+		writer.writeEndElement();
+		writer.flush();
+		writer.close();
+		
+		out.write(ENVELOPE_END);
+		out.flush();
+		
+		buffers.release(out.to(null));
+	}
+	
+	/**
+	 * A call read from a request envelope.
+	 */
+	public static final class Invocation {
+		
+		private final InvocationPlan plan;
+		private final Object[] arguments;
+		
+		private Invocation(InvocationPlan plan, Object[] arguments) {
+			this.plan = plan;
+			this.arguments = arguments;
+		}
+		
+		public Method method() {
+			return plan.method;
+		}
+		
+		public InvocationPlan plan() {
+			return plan;
+		}
+		
+		public Object[] arguments() {
+			return arguments;
+		}
+	}
+	
+	private static byte[] utf8(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+	
 	private Set<Class> methodTypes(Method method) {
 		
 		Set<Class> types = new HashSet<Class>();
@@ -333,17 +787,148 @@ public class ServiceType {
 		return types;
 	}
 	
-	private class MethodInfo {
-		final Class requestClass;
-		final Method[] requestSetters;
-		final Class responseClass;
-		final Method responseGetter;
-		final Map<String, Class> declaredExceptions;
+	/**
+	 * Whether a <code>clazz</code> property, or a property of one of its
+	 * properties, can hold a <code>DataHandler</code>.
+	 */
+	private static boolean holdsDataHandler(Class clazz, Set<Class> visited) {
+		
+		for (Class c = clazz; c != null && c != Object.class && visited.add(c); c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers()) && holdsDataHandler(field.getGenericType(), visited)) {
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	private static boolean holdsDataHandler(Type type, Set<Class> visited) {
+		
+		if (type instanceof ParameterizedType) {
+			for (Type argument : ((ParameterizedType)type).getActualTypeArguments()) {
+				if (holdsDataHandler(argument, visited)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		if (type instanceof WildcardType) {
+			return holdsDataHandler(((WildcardType)type).getUpperBounds()[0], visited);
+		}
+		
+		if (!(type instanceof Class)) {
+			return false;
+		}
 		
-		public MethodInfo(Method method) throws Exception {
+		Class clazz = (Class)type;
+		
+		while (clazz.isArray()) {
+			clazz = clazz.getComponentType();
+		}
+		
+		if (DataHandler.class.isAssignableFrom(clazz)) {
+			return true;
+		}
+		
+		if (clazz.isPrimitive() || clazz.isEnum() || clazz.getName().startsWith("java")) {
+			return false;
+		}
+		
+		return holdsDataHandler(clazz, visited);
+	}
+	
+	/**
+	 * Everything needed to turn a call on <code>iface</code> into a wrapper
+	 * object and back, resolved once when the type is built so that calls
+	 * themselves do no reflective lookups.
+	 */
+	public final class InvocationPlan {
+		
+		private final Method method;
+		private final QName qname;
+		private final QName responseQName;
+		private final int parameterCount;
+		private final Class requestClass;
+		private final MethodHandle requestConstructor;
+		private final MethodHandle[] requestSetters;
+		private final MethodHandle[] requestGetters;
+		private final Class responseClass;
+		private final MethodHandle responseConstructor;
+		private final MethodHandle responseGetter;
+		private final MethodHandle responseSetter;
+		private final boolean emptyList;
+		private final boolean emptySet;
+		private final Map<String, MethodHandle> exceptionConstructors;
+		private final ServiceBinding.Operation operation;
+		private final Class elementType;
+		private final boolean stream;
+		private final boolean repeatable;
+		
+		/**
+		 * A plan whose wrappers and accessors are the generated
+		 * <code>operation</code>'s; nothing is looked up reflectively.
+		 */
+		private InvocationPlan(Method method, ServiceBinding.Operation operation) {
+			
+			Class<?> returnType = operation.returnType();
+			
+			this.method = method;
+			this.qname = new QName(namespace, method.getName());
+			this.responseQName = new QName(namespace, method.getName() + "Response");
+			this.parameterCount = method.getParameterTypes().length;
+			this.elementType = elementType(method);
+			this.stream = Stream.class.equals(method.getReturnType());
+			this.requestClass = operation.requestClass();
+			this.repeatable = !holdsDataHandler(requestClass, new HashSet<Class>());
+			this.requestConstructor = null;
+			this.requestSetters = null;
+			this.requestGetters = null;
+			this.responseClass = operation.responseClass();
+			this.responseConstructor = null;
+			this.responseGetter = null;
+			this.responseSetter = null;
+			this.emptyList = returnType != null && List.class.isAssignableFrom(returnType);
+			this.emptySet = returnType != null && Set.class.isAssignableFrom(returnType);
+			this.exceptionConstructors = null;
+			this.operation = operation;
+		}
+		
+		private InvocationPlan(Method method) throws Exception {
+			
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			
+			this.method = method;
+			this.operation = null;
+			this.qname = new QName(namespace, method.getName());
+			this.responseQName = new QName(namespace, method.getName() + "Response");
+			this.parameterCount = method.getParameterTypes().length;
+			this.elementType = elementType(method);
+			this.stream = Stream.class.equals(method.getReturnType());
 			this.requestClass = requestClass(method);
-			this.requestSetters = setters(requestClass);
+			this.repeatable = !holdsDataHandler(requestClass, new HashSet<Class>());
+			this.requestConstructor = lookup.findConstructor(requestClass, MethodType.methodType(void.class))
+				.asType(MethodType.methodType(Object.class));
+			
+			List<Method> setters = setters(requestClass);
+			this.requestSetters = new MethodHandle[setters.size()];
+			this.requestGetters = new MethodHandle[setters.size()];
+			
+			for (int i = 0; i < setters.size(); i++) {
+				Method setter = setters.get(i);
+				Method getter = getter(requestClass, setter.getName().substring(3));
+				requestSetters[i] = lookup.unreflect(setter).asType(MethodType.methodType(void.class, Object.class, Object.class));
+				requestGetters[i] = getter == null ? null : lookup.unreflect(getter).asType(MethodType.methodType(Object.class, Object.class));
+			}
+			
 			this.responseClass = responseClass(method);
+			this.responseConstructor = constructor(lookup, responseClass);
+			
+			if (requestSetters.length < method.getParameterTypes().length) {
+				throw new IllegalStateException("Wrapper " + requestClass.getName() + " has " + requestSetters.length + " properties but " + method + " takes " + method.getParameterTypes().length + " arguments");
+			}
 			
 			Method ret;
 			try {
@@ -352,26 +937,246 @@ public class ServiceType {
 			catch(NoSuchMethodException ex) {
 				ret = null;
 			}
-			this.responseGetter = ret;
 			
-			declaredExceptions = new HashMap<String, Class>();
+			if (ret == null) {
+				this.responseGetter = null;
+				this.responseSetter = null;
+				this.emptyList = false;
+				this.emptySet = false;
+			}
+			else {
+				Method setReturn;
+				try {
+					setReturn = responseClass.getMethod("setReturn", ret.getReturnType());
+				}
+				catch (NoSuchMethodException ex) {
+					setReturn = null;
+				}
+				
+				this.responseGetter = lookup.unreflect(ret).asType(MethodType.methodType(Object.class, Object.class));
+				this.responseSetter = setReturn == null ? null : lookup.unreflect(setReturn).asType(MethodType.methodType(void.class, Object.class, Object.class));
+				this.emptyList = List.class.isAssignableFrom(ret.getReturnType());
+				this.emptySet = Set.class.isAssignableFrom(ret.getReturnType());
+			}
+			
+			exceptionConstructors = new HashMap<String, MethodHandle>();
 			for (Class<?> exceptionType : method.getExceptionTypes()) {
-				String name = exceptionType.getSimpleName();
-				declaredExceptions.put(name, exceptionType);
+				
+				MethodHandle constructor;
+				try {
+					constructor = lookup.findConstructor(exceptionType, MethodType.methodType(void.class, String.class))
+						.asType(MethodType.methodType(Object.class, String.class));
+				}
+				catch (NoSuchMethodException ex) {
+					continue;
+				}
+				
+				exceptionConstructors.put(exceptionType.getSimpleName(), constructor);
+			}
+		}
+		
+		public Method method() {
+			return method;
+		}
+		
+		/**
+		 * See {@link ServiceType#isStreamed(Method)}.
+		 */
+		public boolean isStreamed() {
+			return elementType != null;
+		}
+		
+		/**
+		 * See {@link ServiceType#isRepeatable(Method)}.
+		 */
+		public boolean isRepeatable() {
+			return repeatable;
+		}
+		
+		Object newRequest(Object[] args) throws Exception {
+			
+			if (operation != null) {
+				return operation.newRequest(args);
+			}
+			
+			try {
+				Object request = (Object)requestConstructor.invokeExact();
+				
+				for (int i=0; i<args.length; i++) {
+					requestSetters[i].invokeExact(request, args[i]);
+				}
+				
+				return request;
+			}
+			catch (Throwable t) {
+				throw rethrow(t);
 			}
 		}
 		
-		public Object newRequest(Object[] args) throws Exception {
+		Object returnValue(Object wrapper) throws Exception {
 			
-			Object request = requestClass.newInstance();
+			Object response;
 			
-			for (int i=0; i<args.length; i++) {
-				Method setter = requestSetters[i];
-				Object arg = args[i];
-				setter.invoke(request, new Object[]{arg});
+			if (operation != null) {
+				response = operation.returnValue(wrapper);
+			}
+			else if (responseGetter == null) {
+				return null;
+			}
+			else {
+				try {
+					response = (Object)responseGetter.invokeExact(wrapper);
+				}
+				catch (Throwable t) {
+					throw rethrow(t);
+				}
 			}
 			
-			return request;
+			if (response == null) {
+				if (emptyList) {
+					response = new ArrayList();
+				}
+				else if (emptySet) {
+					response = new HashSet();
+				}
+			}
+			
+			return response;
+		}
+		
+		/**
+		 * Returns the request wrapper's properties in argument order.
+		 */
+		Object[] arguments(Object wrapper) throws Exception {
+			
+			if (operation != null) {
+				return operation.arguments(wrapper);
+			}
+			
+			Object[] args = new Object[parameterCount];
+			
+			try {
+				for (int i = 0; i < args.length; i++) {
+					
+					if (requestGetters[i] == null) {
+						throw new IllegalStateException("Wrapper " + requestClass.getName() + " has no getter for argument " + i + " of " + qname.getLocalPart());
+					}
+					
+					args[i] = (Object)requestGetters[i].invokeExact(wrapper);
+				}
+			}
+			catch (Throwable t) {
+				throw rethrow(t);
+			}
+			
+			return args;
+		}
+		
+		/**
+		 * Returns a response wrapper holding <code>value</code>, which is
+		 * ignored if the wrapper has no return property.
+		 */
+		Object newResponse(Object value) throws Exception {
+			
+			if (operation != null) {
+				return operation.newResponse(value);
+			}
+			
+			if (responseConstructor == null) {
+				throw new IllegalStateException("Wrapper " + responseClass.getName() + " has no public no-arg constructor");
+			}
+			
+			try {
+				Object response = (Object)responseConstructor.invokeExact();
+				
+				if (value == null || responseGetter == null) {
+					return response;
+				}
+				
+				if (responseSetter != null) {
+					responseSetter.invokeExact(response, value);
+				}
+				else if (value instanceof Collection) {
+					((Collection)(Object)responseGetter.invokeExact(response)).addAll((Collection)value);
+				}
+				else {
+					throw new IllegalStateException("Wrapper " + responseClass.getName() + " has no setReturn");
+				}
+				
+				return response;
+			}
+			catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+		
+		/**
+		 * Returns the declared exception named <code>name</code>, or null if
+		 * the method has none that can be built from a message.
+		 */
+		Object newException(String name, String message) throws Exception {
+			
+			if (operation != null) {
+				return operation.newException(name, message);
+			}
+			
+			MethodHandle constructor = exceptionConstructors.get(name);
+			
+			if (constructor == null) {
+				return null;
+			}
+			
+			try {
+				return (Object)constructor.invokeExact(message);
+			}
+			catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+		
+		/**
+		 * The element type of a method declared to return an
+		 * <code>Iterator</code> or <code>Stream</code>, or null for any other
+		 * method.
+		 */
+		private Class elementType(Method method) {
+			
+			Class<?> returnType = method.getReturnType();
+			
+			if (!Iterator.class.equals(returnType) && !Stream.class.equals(returnType)) {
+				return null;
+			}
+			
+			Type type = method.getGenericReturnType();
+			
+			if (type instanceof ParameterizedType) {
+				
+				Type argument = ((ParameterizedType)type).getActualTypeArguments()[0];
+				
+				if (argument instanceof WildcardType) {
+					argument = ((WildcardType)argument).getUpperBounds()[0];
+				}
+				
+				if (argument instanceof ParameterizedType) {
+					argument = ((ParameterizedType)argument).getRawType();
+				}
+				
+				if (argument instanceof Class && !Object.class.equals(argument)) {
+					return (Class)argument;
+				}
+			}
+			
+			throw new IllegalStateException("Can't stream the result of " + method + " without a concrete element type");
+		}
+		
+		private Exception rethrow(Throwable t) {
+			if (t instanceof Error) {
+				throw (Error)t;
+			}
+			if (t instanceof Exception) {
+				return (Exception)t;
+			}
+			return new RuntimeException(t);
 		}
 		
 		private Class requestClass(Method method) throws Exception {
@@ -394,16 +1199,87 @@ public class ServiceType {
 			return wrapperClass;
 		}
 		
-		private Method[] setters(Class clazz) {
-			List<Method> setters = new ArrayList<Method>();
+		/**
+		 * Returns the wrapper's setters in argument order. That order comes
+		 * from <code>@XmlType(propOrder)</code> when present, otherwise from
+		 * field declaration order; <code>getMethods()</code> order is
+		 * unspecified and can't be relied on.
+		 */
+		private List<Method> setters(Class clazz) {
+			
+			List<String> properties = new ArrayList<String>();
+			
+			XmlType xmlType = (XmlType)clazz.getAnnotation(XmlType.class);
+			if (xmlType != null) {
+				for (String property : xmlType.propOrder()) {
+					if (property.length() > 0) {
+						properties.add(property);
+					}
+				}
+			}
+			
+			if (properties.isEmpty()) {
+				for (Field field : clazz.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+						properties.add(field.getName());
+					}
+				}
+			}
 			
+			Map<String, Method> setters = new HashMap<String, Method>();
 			for (Method method : clazz.getMethods()) {
-				if (method.getName().startsWith("set")) {
-					setters.add(method);
+				if (method.getName().startsWith("set") && method.getParameterTypes().length == 1) {
+					setters.put(method.getName(), method);
 				}
 			}
 			
-			return setters.toArray(new Method[0]);
+			List<Method> ordered = new ArrayList<Method>();
+			
+			for (String property : properties) {
+				
+				String name = property;
+				while (name.startsWith("_")) {
+					name = name.substring(1);
+				}
+				
+				Method setter = setters.get("set" + name.substring(0, 1).toUpperCase() + name.substring(1));
+				
+				if (setter != null) {
+					ordered.add(setter);
+				}
+			}
+			
+			return ordered;
+		}
+		
+		/**
+		 * The getter for a capitalized property name, or null.
+		 */
+		private Method getter(Class clazz, String property) {
+			
+			for (String prefix : new String[]{ "get", "is" }) {
+				try {
+					return clazz.getMethod(prefix + property);
+				}
+				catch (NoSuchMethodException ex) {
+					continue;
+				}
+			}
+			
+			return null;
+		}
+		
+		/**
+		 * The public no-arg constructor, or null. Only servers construct
+		 * response wrappers, so clients don't need one.
+		 */
+		private MethodHandle constructor(MethodHandles.Lookup lookup, Class clazz) {
+			try {
+				return lookup.findConstructor(clazz, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+			}
+			catch (NoSuchMethodException | IllegalAccessException ex) {
+				return null;
+			}
 		}
 	}
 }
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Moves SOAP envelopes over HTTP for {@link Service}. Implementations must be
+ * safe for concurrent use by many proxies.
+ * 
+ * @see CommonsHttpTransport
+ * @see JdkHttpTransport
+ */
+public interface Transport {
+	
+	/**
+	 * POSTs <code>body</code> to <code>url</code> and returns once the
+	 * response status and headers are available. The caller must
+	 * {@link Response#release() release} the response.
+	 * <p>
+	 * If a <code>deadline</code> is given, the exchange must be aborted when
+	 * it expires, whether the caller is still waiting for the response or
+	 * reading its body, so that a hung server cannot hold the caller or the
+	 * connection.
+	 * 
+	 * @throws java.net.ConnectException if no connection could be made, so
+	 * the request was certainly not delivered
+	 */
+	Response post(String url, Map<String, String> headers, Body body, Deadline deadline) throws IOException;
+	
+	/**
+	 * A request body, written to the connection by the transport.
+	 */
+	interface Body {
+		
+		/** Whether {@link #writeRequest} may be called more than once. */
+		boolean isRepeatable();
+		
+		void writeRequest(OutputStream out) throws IOException;
+		
+		/** The body length, or -1 if it is not known before writing. */
+		long getContentLength();
+		
+		String getContentType();
+	}
+	
+	interface Response {
+		
+		int getStatusCode();
+		
+		/** The first value of the named header, or null. */
+		String getHeader(String name);
+		
+		/** The response body, read from the connection as it is consumed. */
+		InputStream getBody() throws IOException;
+		
+		/** Returns the connection to the transport. */
+		void release();
+		
+		/**
+		 * Gives up on the rest of the response. Transports that would
+		 * otherwise read it to the end to reuse the connection close the
+		 * connection instead.
+		 */
+		default void abort() {
+			release();
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import com.moss.jaxbhelper.JAXBHelper;
+
+/**
+ * Debug logging of request and response bodies. Messages are queued on a
+ * bounded queue and pretty-printed by a single background thread; when the
+ * queue is full the message is dropped (and counted) rather than blocking
+ * the caller. Messages can be sampled per operation and are truncated past
+ * a configurable size.
+ */
+public class WireLog {
+	
+	private static final WireLog defaultLog = new WireLog(1000, 64 * 1024);
+	
+	public static WireLog defaultInstance() {
+		return defaultLog;
+	}
+	
+	private final BlockingQueue<Entry> queue;
+	private final ConcurrentMap<String, Double> samplingRates = new ConcurrentHashMap<String, Double>();
+	private final AtomicLong logged = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong sampledOut = new AtomicLong();
+	private volatile double defaultSamplingRate = 1.0;
+	private volatile int maxMessageBytes;
+	private volatile Thread formatter;
+	
+	public WireLog(int queueCapacity, int maxMessageBytes) {
+		this.queue = new ArrayBlockingQueue<Entry>(queueCapacity);
+		this.maxMessageBytes = maxMessageBytes;
+	}
+	
+	/**
+	 * Sets the fraction (0 to 1) of calls whose bodies are logged, for
+	 * operations that have no rate of their own.
+	 */
+	public void setDefaultSamplingRate(double rate) {
+		defaultSamplingRate = rate;
+	}
+	
+	public void setSamplingRate(String operation, double rate) {
+		samplingRates.put(operation, rate);
+	}
+	
+	/**
+	 * Bodies longer than this are logged as-is up to the limit, without
+	 * pretty-printing.
+	 */
+	public void setMaxMessageBytes(int maxMessageBytes) {
+		this.maxMessageBytes = maxMessageBytes;
+	}
+	
+	/**
+	 * Decides whether the bodies of a call to <code>operation</code> should
+	 * be logged. Callers should ask once per call, before buffering anything.
+	 */
+	public boolean sample(Log log, String operation) {
+		
+		if (!log.isDebugEnabled()) {
+			return false;
+		}
+		
+		Double rate = samplingRates.get(operation);
+		double r = rate == null ? defaultSamplingRate : rate.doubleValue();
+		
+		if (r >= 1.0 || ThreadLocalRandom.current().nextDouble() < r) {
+			return true;
+		}
+		
+		sampledOut.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * Queues <code>content</code> to be logged under <code>heading</code>.
+	 * Never blocks. Only the part that will be printed is queued, so the
+	 * queue holds at most its capacity times the message limit.
+	 */
+	public void log(Log log, String heading, byte[] content) {
+		
+		if (formatter == null) {
+			ensureStarted();
+		}
+		
+		int limit = maxMessageBytes;
+		byte[] kept = content.length > limit ? Arrays.copyOf(content, limit) : content;
+		
+		if (!queue.offer(new Entry(log, heading, kept, content.length))) {
+			dropped.incrementAndGet();
+		}
+	}
+	
+	public long logged() {
+		return logged.get();
+	}
+	
+	public long dropped() {
+		return dropped.get();
+	}
+	
+	public long sampledOut() {
+		return sampledOut.get();
+	}
+	
+	private synchronized void ensureStarted() {
+		
+		if (formatter != null) {
+			return;
+		}
+		
+		formatter = new Thread("jaxws-lite wire log") {
+			public void run() {
+				while (true) {
+					Entry entry;
+					try {
+						entry = queue.take();
+					}
+					catch (InterruptedException ex) {
+						return;
+					}
+					
+					try {
+						entry.log.debug(format(entry));
+						logged.incrementAndGet();
+					}
+					catch (RuntimeException ex) {
+						entry.log.debug("Failed to log message: " + entry.heading, ex);
+					}
+				}
+			}
+		};
+		formatter.setDaemon(true);
+		formatter.setPriority(Thread.MIN_PRIORITY);
+		formatter.start();
+	}
+	
+	private String format(Entry entry) {
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append(entry.heading).append("\n");
+		
+		byte[] content = entry.content;
+		
+		if (entry.length > content.length) {
+			sb.append(new String(content, StandardCharsets.UTF_8));
+			sb.append("... [").append(entry.length - content.length).append(" more bytes]");
+			return sb.toString();
+		}
+		
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			JAXBHelper.beautify(new ByteArrayInputStream(content), out);
+			sb.append(new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}
+		catch (Exception ex) {
+			sb.append(new String(content, StandardCharsets.UTF_8));
+		}
+		
+		return sb.toString();
+	}
+	
+	private static class Entry {
+		final Log log;
+		final String heading;
+		final byte[] content;
+		final int length;
+		
+		/**
+		 * @param length the size of the whole message, of which
+		 * <code>content</code> may be only the start
+		 */
+		Entry(Log log, String heading, byte[] content, int length) {
+			this.log = log;
+			this.heading = heading;
+			this.content = content;
+			this.length = length;
+		}
+	}
+}
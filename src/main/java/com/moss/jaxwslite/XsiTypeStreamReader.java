@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * Reverse of {@link XsiTypeStreamWriter}: <code>xsi:type</code> values whose
+ * prefix resolves to the service namespace are handed to JAXB unprefixed,
+ * whatever prefix the server chose for it.
+ */
+class XsiTypeStreamReader extends StreamReaderDelegate {
+	
+	private final String namespace;
+	
+	public XsiTypeStreamReader(XMLStreamReader reader, String namespace) {
+		super(reader);
+		this.namespace = namespace;
+	}
+	
+	public String getAttributeValue(int index) {
+		
+		String value = super.getAttributeValue(index);
+		
+		if ("type".equals(getAttributeLocalName(index)) && XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(getAttributeNamespace(index))) {
+			return unqualify(value);
+		}
+		
+		return value;
+	}
+	
+	public String getAttributeValue(String namespaceURI, String localName) {
+		
+		String value = super.getAttributeValue(namespaceURI, localName);
+		
+		if (value != null && "type".equals(localName) && XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(namespaceURI)) {
+			return unqualify(value);
+		}
+		
+		return value;
+	}
+	
+	private String unqualify(String value) {
+		
+		int colon = value.indexOf(':');
+		
+		if (colon == -1) {
+			return value;
+		}
+		
+		String prefix = value.substring(0, colon).trim();
+		
+		if (namespace.equals(getNamespaceURI(prefix))) {
+			return value.substring(colon + 1);
+		}
+		
+		return value;
+	}
+}
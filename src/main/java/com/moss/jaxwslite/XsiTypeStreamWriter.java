@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of jaxws-lite.
+ *
+ * jaxws-lite is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * jaxws-lite is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaxws-lite; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.jaxwslite;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Qualifies unprefixed <code>xsi:type</code> values written by JAXB with the
+ * service namespace, which is where the server expects the types to live.
+ * The prefix already bound to that namespace is reused; if there is none,
+ * one is declared on the current element.
+ */
+class XsiTypeStreamWriter implements XMLStreamWriter {
+	
+	private static final String DECLARED_PREFIX = "jwl";
+	
+	private final XMLStreamWriter delegate;
+	private final String namespace;
+	
+	public XsiTypeStreamWriter(XMLStreamWriter delegate, String namespace) {
+		this.delegate = delegate;
+		this.namespace = namespace;
+	}
+	
+	public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+		delegate.writeAttribute(prefix, namespaceURI, localName, qualify(namespaceURI, localName, value));
+	}
+	
+	public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+		delegate.writeAttribute(namespaceURI, localName, qualify(namespaceURI, localName, value));
+	}
+	
+	private String qualify(String namespaceURI, String localName, String value) throws XMLStreamException {
+		
+		if (!"type".equals(localName) || !XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(namespaceURI)) {
+			return value;
+		}
+		
+		if (value.indexOf(':') != -1) {
+			return value;
+		}
+		
+		String prefix = delegate.getPrefix(namespace);
+		
+		if (prefix == null) {
+			prefix = DECLARED_PREFIX;
+			delegate.writeNamespace(prefix, namespace);
+			delegate.setPrefix(prefix, namespace);
+		}
+		else if (prefix.length() == 0) {
+			return value;
+		}
+		
+		return prefix + ":" + value;
+	}
+	
+	public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+		delegate.writeNamespace(prefix, namespaceURI);
+		
+		/*
+		 * Not every writer tracks the bindings it writes out when it isn't
+		 * repairing namespaces; record it so getPrefix() can find it.
+		 */
+		if (prefix != null && prefix.length() > 0 && !XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+			delegate.setPrefix(prefix, namespaceURI);
+		}
+	}
+	
+	public void writeStartElement(String localName) throws XMLStreamException {
+		delegate.writeStartElement(localName);
+	}
+	
+	public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+		delegate.writeStartElement(namespaceURI, localName);
+	}
+	
+	public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+		delegate.writeStartElement(prefix, localName, namespaceURI);
+	}
+	
+	public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+		delegate.writeEmptyElement(namespaceURI, localName);
+	}
+	
+	public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+		delegate.writeEmptyElement(prefix, localName, namespaceURI);
+	}
+	
+	public void writeEmptyElement(String localName) throws XMLStreamException {
+		delegate.writeEmptyElement(localName);
+	}
+	
+	public void writeEndElement() throws XMLStreamException {
+		delegate.writeEndElement();
+	}
+	
+	public void writeEndDocument() throws XMLStreamException {
+		delegate.writeEndDocument();
+	}
+	
+	public void close() throws XMLStreamException {
+		delegate.close();
+	}
+	
+	public void flush() throws XMLStreamException {
+		delegate.flush();
+	}
+	
+	public void writeAttribute(String localName, String value) throws XMLStreamException {
+		delegate.writeAttribute(localName, value);
+	}
+	
+	public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+		delegate.writeDefaultNamespace(namespaceURI);
+	}
+	
+	public void writeComment(String data) throws XMLStreamException {
+		delegate.writeComment(data);
+	}
+	
+	public void writeProcessingInstruction(String target) throws XMLStreamException {
+		delegate.writeProcessingInstruction(target);
+	}
+	
+	public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+		delegate.writeProcessingInstruction(target, data);
+	}
+	
+	public void writeCData(String data) throws XMLStreamException {
+		delegate.writeCData(data);
+	}
+	
+	public void writeDTD(String dtd) throws XMLStreamException {
+		delegate.writeDTD(dtd);
+	}
+	
+	public void writeEntityRef(String name) throws XMLStreamException {
+		delegate.writeEntityRef(name);
+	}
+	
+	public void writeStartDocument() throws XMLStreamException {
+		delegate.writeStartDocument();
+	}
+	
+	public void writeStartDocument(String version) throws XMLStreamException {
+		delegate.writeStartDocument(version);
+	}
+	
+	public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+		delegate.writeStartDocument(encoding, version);
+	}
+	
+	public void writeCharacters(String text) throws XMLStreamException {
+		delegate.writeCharacters(text);
+	}
+	
+	public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+		delegate.writeCharacters(text, start, len);
+	}
+	
+	public String getPrefix(String uri) throws XMLStreamException {
+		return delegate.getPrefix(uri);
+	}
+	
+	public void setPrefix(String prefix, String uri) throws XMLStreamException {
+		delegate.setPrefix(prefix, uri);
+	}
+	
+	public void setDefaultNamespace(String uri) throws XMLStreamException {
+		delegate.setDefaultNamespace(uri);
+	}
+	
+	public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+		delegate.setNamespaceContext(context);
+	}
+	
+	public NamespaceContext getNamespaceContext() {
+		return delegate.getNamespaceContext();
+	}
+	
+	public Object getProperty(String name) throws IllegalArgumentException {
+		return delegate.getProperty(name);
+	}
+}